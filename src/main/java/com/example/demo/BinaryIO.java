@@ -0,0 +1,37 @@
+package com.example.demo;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed UTF-8 strings shared by the checkpoint, session and spill file formats.
+ * Unlike {@link DataOutput#writeUTF} there is no 64K limit, and the encoded size is known
+ * up front so callers can track file offsets.
+ */
+final class BinaryIO {
+
+    private BinaryIO() {
+    }
+
+    /** Writes {@code s} and returns the number of bytes written (prefix included). */
+    static int writeString(DataOutput out, String s) throws IOException {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+        return 4 + b.length;
+    }
+
+    static byte[] readBytes(DataInput in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) throw new IOException("Corrupt record: negative length " + len);
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+
+    static String readString(DataInput in) throws IOException {
+        return new String(readBytes(in), StandardCharsets.UTF_8);
+    }
+}
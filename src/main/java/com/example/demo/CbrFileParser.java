@@ -0,0 +1,308 @@
+package com.example.demo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single streaming pass over one CBR TXT file.
+ *
+ * Produces one details line per message ({@code UNH02|BGM/NADQUAL=CODE}) and, in the same pass,
+ * checks the envelope: UNT segment counts and references, UNZ message counts and references,
+ * and messages / interchanges left open at end of file. Envelope problems are kept apart from the
+ * details, as {@code <error type>|<UNH02>|<reference>|<detail>} lines, so they never show up in
+ * the details column or its exports.
+ */
+final class CbrFileParser {
+
+    /** Reference written for messages without a BGM document number. */
+    static final String NO_BGM = "No BGM02";
+
+    /** Parsed summary of one TXT file. */
+    static final class Result {
+        final String filename;
+        final String tid;
+        final String unhCount;
+        final String details;
+        final String envelope; // envelope problem lines, "" when the envelope is sound
+
+        Result(String filename, String tid, String unhCount, String details, String envelope) {
+            this.filename = filename;
+            this.tid = tid;
+            this.unhCount = unhCount;
+            this.details = details;
+            this.envelope = envelope;
+        }
+    }
+
+    private static final int CANCEL_CHECK_INTERVAL = 256; // segments
+
+    private CbrFileParser() {
+    }
+
+    static String normalizeCode(String s) {
+        if (s == null) return "";
+        return s.trim().toUpperCase(Locale.ROOT);
+    }
+
+    static String tidForFilename(String filename) {
+        return filename.toLowerCase(Locale.ROOT).endsWith(".txt")
+                ? filename.substring(0, filename.length() - 4)
+                : filename;
+    }
+
+    /** Message count from a row summary ("UNH: 12 [IFTSTA] / NAD: 12"), or 0 when it has none. */
+    static int messageCount(String unhSummary) {
+        if (unhSummary == null || !unhSummary.startsWith("UNH: ")) return 0;
+        int i = 5;
+        int n = 0;
+        while (i < unhSummary.length() && Character.isDigit(unhSummary.charAt(i))) {
+            n = n * 10 + (unhSummary.charAt(i++) - '0');
+        }
+        return n;
+    }
+
+    // ============================================================
+    // NAD selection (UNH02 rules)
+    // ============================================================
+
+    private static class SelectedNad {
+        final String qual; // ZZZ, HI, TB
+        final String code; // code
+        SelectedNad(String qual, String code) {
+            this.qual = qual;
+            this.code = code;
+        }
+    }
+
+    private static SelectedNad selectNadForUnh02(String unh02, Map<String, String> nadByQual) {
+        String u = (unh02 == null) ? "" : unh02.trim().toUpperCase(Locale.ROOT);
+
+        if ("IFTSTA".equals(u) || "IFTMBC".equals(u)) {
+            String z = nadByQual.get("ZZZ");
+            if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
+            return null;
+        }
+
+        if ("APERAK".equals(u)) {
+            String z = nadByQual.get("ZZZ");
+            if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
+
+            String hi = nadByQual.get("HI");
+            if (hi != null && !hi.isBlank()) return new SelectedNad("HI", hi);
+
+            String tb = nadByQual.get("TB");
+            if (tb != null && !tb.isBlank()) return new SelectedNad("TB", tb);
+
+            return null;
+        }
+
+        String z = nadByQual.get("ZZZ");
+        if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
+        return null;
+    }
+
+    // ============================================================
+    // Parse
+    // ============================================================
+
+    /**
+     * Parses one file. {@code job} may be null; when given, cancellation is checked every few
+     * hundred segments so a cancel stops the parse mid-file. A read failure (truncated ZIP entry,
+     * unreadable file) is thrown rather than returned as a partial result.
+     */
+    static Result parse(String filename, InputStream inputStream, UploadJob job) throws IOException {
+
+        int unhCount = 0;
+        int nadCount = 0;
+
+        List<String> outputLines = new ArrayList<>();
+        List<String> envelopeLines = new ArrayList<>();
+        Set<String> unh02Set = new LinkedHashSet<>();
+
+        String tid = tidForFilename(filename);
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+
+            EdifactSegmentReader segments = new EdifactSegmentReader(reader);
+            String segment;
+            int segmentsRead = 0;
+
+            // message state (UNH .. UNT)
+            boolean inUnh = false;
+            String currentUNH02 = "";
+            String currentBGM = "";
+            String currentUnhRef = "";
+            int currentSegmentCount = 0;
+            Map<String, String> currentNadByQual = new HashMap<>();
+
+            // interchange state (UNB .. UNZ)
+            boolean inInterchange = false;
+            String unbRef = "";
+            int messagesInInterchange = 0;
+            int groupsInInterchange = 0;
+
+            while ((segment = segments.next()) != null) {
+                if (job != null && ++segmentsRead % CANCEL_CHECK_INTERVAL == 0) job.checkCancelled();
+
+                String tag = segments.tag(segment);
+
+                if ("UNB".equals(tag)) {
+                    if (inInterchange) {
+                        envelopeLines.add(envelopeLine(Finding.INTERCHANGE_NOT_TERMINATED, "", unbRef,
+                                "new UNB started before UNZ"));
+                    }
+                    String[] parts = segments.elements(segment);
+                    inInterchange = true;
+                    unbRef = parts.length > 5 ? segments.firstComponent(parts[5]).trim() : "";
+                    messagesInInterchange = 0;
+                    groupsInInterchange = 0;
+                    continue;
+                }
+
+                if ("UNG".equals(tag)) {
+                    groupsInInterchange++;
+                    continue;
+                }
+
+                if ("UNZ".equals(tag)) {
+                    String[] parts = segments.elements(segment);
+                    String declared = parts.length > 1 ? segments.firstComponent(parts[1]).trim() : "";
+                    String ref = parts.length > 2 ? segments.firstComponent(parts[2]).trim() : "";
+
+                    if (!inInterchange) {
+                        envelopeLines.add(envelopeLine(Finding.UNZ_REFERENCE_MISMATCH, "", ref, "UNZ without UNB"));
+                    } else {
+                        // with functional groups, UNZ counts groups instead of messages
+                        int actual = groupsInInterchange > 0 ? groupsInInterchange : messagesInInterchange;
+                        if (!declared.equals(String.valueOf(actual))) {
+                            envelopeLines.add(envelopeLine(Finding.UNZ_COUNT_MISMATCH, "", unbRef,
+                                    "declared " + declared + ", actual " + actual));
+                        }
+                        if (!ref.equals(unbRef)) {
+                            envelopeLines.add(envelopeLine(Finding.UNZ_REFERENCE_MISMATCH, "", unbRef,
+                                    "UNB " + unbRef + ", UNZ " + ref));
+                        }
+                    }
+                    inInterchange = false;
+                    continue;
+                }
+
+                if ("UNH".equals(tag)) {
+
+                    if (inUnh) {
+                        outputLines.add(messageLine(currentUNH02, currentBGM, currentNadByQual));
+                        envelopeLines.add(envelopeLine(Finding.MESSAGE_NOT_TERMINATED, currentUNH02,
+                                bgmOrPlaceholder(currentBGM), "next UNH started before UNT"));
+                    }
+
+                    inUnh = true;
+                    unhCount++;
+                    messagesInInterchange++;
+                    currentSegmentCount = 1;
+
+                    currentBGM = "";
+                    currentNadByQual.clear();
+
+                    String[] parts = segments.elements(segment);
+                    currentUnhRef = parts.length > 1 ? segments.firstComponent(parts[1]).trim() : "";
+                    String msgType = parts.length > 2 ? segments.firstComponent(parts[2]).trim() : "";
+                    currentUNH02 = normalizeCode(msgType);
+                    if (!currentUNH02.isBlank()) unh02Set.add(currentUNH02);
+
+                    continue;
+                }
+
+                if (!inUnh) continue;
+
+                currentSegmentCount++;
+
+                if ("UNT".equals(tag)) {
+                    String[] parts = segments.elements(segment);
+                    String declared = parts.length > 1 ? segments.firstComponent(parts[1]).trim() : "";
+                    String ref = parts.length > 2 ? segments.firstComponent(parts[2]).trim() : "";
+                    String bgm = bgmOrPlaceholder(currentBGM);
+
+                    if (!declared.equals(String.valueOf(currentSegmentCount))) {
+                        envelopeLines.add(envelopeLine(Finding.UNT_COUNT_MISMATCH, currentUNH02, bgm,
+                                "declared " + declared + ", actual " + currentSegmentCount));
+                    }
+                    if (!ref.equals(currentUnhRef)) {
+                        envelopeLines.add(envelopeLine(Finding.UNT_REFERENCE_MISMATCH, currentUNH02, bgm,
+                                "UNH " + currentUnhRef + ", UNT " + ref));
+                    }
+
+                    outputLines.add(messageLine(currentUNH02, currentBGM, currentNadByQual));
+                    inUnh = false;
+                    continue;
+                }
+
+                if ("BGM".equals(tag)) {
+                    String[] parts = segments.elements(segment);
+                    if (parts.length > 2) currentBGM = segments.unescape(parts[2]).trim();
+                    continue;
+                }
+
+                if ("NAD".equals(tag)) {
+                    String[] parts = segments.elements(segment);
+                    if (parts.length >= 3) {
+                        String qual = normalizeCode(parts[1]); // ZZZ/HI/TB
+                        if (!("ZZZ".equals(qual) || "HI".equals(qual) || "TB".equals(qual))) continue;
+
+                        String nadValue = parts[2].trim();
+
+                        int underscore = nadValue.indexOf('_');
+                        if (underscore >= 0) nadValue = nadValue.substring(underscore + 1).trim();
+
+                        nadValue = normalizeCode(segments.firstComponent(nadValue));
+
+                        if (!nadValue.isBlank()) {
+                            currentNadByQual.put(qual, nadValue);
+                            nadCount++;
+                        }
+                    }
+                }
+            }
+
+            if (inUnh) {
+                outputLines.add(messageLine(currentUNH02, currentBGM, currentNadByQual));
+                envelopeLines.add(envelopeLine(Finding.MESSAGE_NOT_TERMINATED, currentUNH02,
+                        bgmOrPlaceholder(currentBGM), "end of file reached before UNT"));
+            }
+            if (inInterchange) {
+                envelopeLines.add(envelopeLine(Finding.INTERCHANGE_NOT_TERMINATED, "", unbRef,
+                        "end of file reached before UNZ"));
+            }
+        }
+
+        String details = String.join("\n", outputLines);
+        String envelope = String.join("\n", envelopeLines);
+
+        String unh02Summary = unh02Set.isEmpty() ? "" : " [" + String.join(", ", unh02Set) + "]";
+        String unhSummary = "UNH: " + unhCount + unh02Summary + " / NAD: " + nadCount;
+
+        return new Result(filename, tid, unhSummary, details, envelope);
+    }
+
+    private static String bgmOrPlaceholder(String bgm) {
+        return (bgm == null || bgm.isBlank()) ? NO_BGM : bgm;
+    }
+
+    private static String messageLine(String unh02, String bgm, Map<String, String> nadByQual) {
+        SelectedNad sel = selectNadForUnh02(unh02, nadByQual);
+        String nadPart = (sel == null) ? "NO_NAD" : (sel.qual + "=" + sel.code);
+        return unh02 + "|" + bgmOrPlaceholder(bgm) + "/" + nadPart;
+    }
+
+    private static String envelopeLine(String errorType, String unh02, String reference, String detail) {
+        return errorType + "|" + unh02 + "|" + reference + "|" + detail;
+    }
+}
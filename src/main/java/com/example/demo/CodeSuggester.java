@@ -0,0 +1,398 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Nearest valid codes for a code missing from the table: likely typos (edit distance, with a
+ * swap of two neighbouring characters counting as one edit) and prefix / suffix variants
+ * ("ABC123" for "ABC1234" or "XABC123").
+ *
+ * Typos are found through a trigram inverted index. An edit touches at most four trigrams (three,
+ * or four for a swap), so a code within distance {@code k} shares at least one of any
+ * {@code 4k + 1} trigrams of the query, and all but {@code 4k} of any larger set. The rarest
+ * trigrams' postings are counted and only codes reaching that count are verified with a bounded
+ * edit distance. Distance 1 is tried first; distance 2 only when it found nothing. Each lookup
+ * reads and verifies a bounded number of candidates, so short codes made of very common trigrams
+ * cannot stall an analysis. Prefix / suffix variants come from binary searches over the sorted
+ * codes and the sorted reversed codes. Results are cached per missing code.
+ */
+final class CodeSuggester {
+
+    static final int DEFAULT_LIMIT = 3;
+
+    private static final int MAX_DISTANCE = 2;
+    private static final int MAX_CACHED = 100_000;
+    private static final int CHEAP_POSTINGS = 10_000; // extra trigram lists are read up to this many postings
+    private static final int MAX_VISITED = 15_000;  // postings read per lookup
+    private static final int MAX_VERIFIED = 600;    // edit distances computed per lookup
+
+    private final String[] codes;         // sorted; a code's id is its index here
+    private final String[] reversed;      // codes reversed, sorted
+    private final Set<String> codeSet;
+    private final GramTable grams = new GramTable();
+    private final int[] offsets;          // ids having the trigram in slot s: postings[offsets[s] .. offsets[s + 1])
+    private final int[] postings;
+    private final ConcurrentHashMap<String, List<String>> cache = new ConcurrentHashMap<>();
+    // one Counters per concurrent lookup, reused: as many as lookups ever ran at once, not one per
+    // (possibly virtual) thread that ever asked
+    private final ConcurrentLinkedQueue<Counters> spareCounters = new ConcurrentLinkedQueue<>();
+
+    /** {@code validCodes} is kept, not copied, so it must not change afterwards. */
+    CodeSuggester(Set<String> validCodes) {
+        codeSet = validCodes;
+        codes = validCodes.toArray(new String[0]);
+        Arrays.sort(codes);
+
+        reversed = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) reversed[i] = reverse(codes[i]);
+        Arrays.sort(reversed);
+
+        // count per trigram, prefix sums, then fill one flat array (ids come out ascending)
+        for (String code : codes) {
+            for (long g : trigrams(code)) grams.add(g);
+        }
+        int slots = grams.capacity();
+        offsets = new int[slots + 1];
+        for (int s = 0; s < slots; s++) offsets[s + 1] = offsets[s] + grams.count(s);
+        postings = new int[offsets[slots]];
+
+        int[] fill = Arrays.copyOf(offsets, slots);
+        for (int id = 0; id < codes.length; id++) {
+            for (long g : trigrams(codes[id])) postings[fill[grams.slot(g)]++] = id;
+        }
+    }
+
+    List<String> suggest(String code) {
+        if (code == null || code.isBlank() || codes.length == 0) return List.of();
+        List<String> cached = cache.get(code);
+        if (cached != null) return cached;
+
+        List<String> result = suggest(code, DEFAULT_LIMIT);
+        if (cache.size() < MAX_CACHED) cache.put(code, result);
+        return result;
+    }
+
+    /** Up to {@code limit} valid codes, closest first (fewest edits, then alphabetical). */
+    List<String> suggest(String code, int limit) {
+        Map<String, Integer> found = new HashMap<>();
+        int[] budget = {MAX_VISITED, MAX_VERIFIED};
+
+        addTypos(code, 1, found, budget);
+        if (found.isEmpty() && code.length() > 4) addTypos(code, MAX_DISTANCE, found, budget);
+        addAffixVariants(code, limit, found);
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(found.entrySet());
+        ranked.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+        List<String> out = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) out.add(ranked.get(i).getKey());
+        return List.copyOf(out);
+    }
+
+    // ============================================================
+    // Typos (trigram candidates, bounded edit distance)
+    // ============================================================
+
+    /** {@code budget}: postings left to read, distances left to compute; shared by both passes. */
+    private void addTypos(String query, int maxDistance, Map<String, Integer> found, int[] budget) {
+        long[] queryGrams = trigrams(query);
+
+        // (list length << 32 | slot) per trigram, sorted: rarest first; 0 for trigrams no code has
+        long[] lists = new long[queryGrams.length];
+        for (int i = 0; i < queryGrams.length; i++) {
+            int slot = grams.slot(queryGrams[i]);
+            lists[i] = slot < 0 ? 0 : (long) (offsets[slot + 1] - offsets[slot]) << 32 | slot;
+        }
+        Arrays.sort(lists);
+
+        // at least the rarest 4k + 1 lists, more while they are cheap: a code within distance k is in
+        // all but at most 4k of the lists read, so the more lists, the fewer candidates to verify
+        int use = Math.min(Math.min(lists.length, Counters.PASS - 1), 4 * maxDistance + 1);
+        long read = 0;
+        for (int i = 0; i < use; i++) read += lists[i] >>> 32;
+        while (use < lists.length && use < Counters.PASS - 1 && read + (lists[use] >>> 32) <= CHEAP_POSTINGS) read += lists[use++] >>> 32;
+        int needed = Math.max(1, use - 4 * maxDistance);
+
+        // count first, then verify the candidates found in the most lists first: when the budget
+        // runs out, what is left are the codes least alike the query
+        Counters counters = borrowCounters();
+        try {
+            int base = counters.nextPass();
+            char[] hits = counters.hits;
+            int[] candidates = counters.candidates;
+            int n = 0;
+            scan:
+            for (int li = 0; li < use; li++) {
+                if (lists[li] == 0) continue;
+                int slot = (int) lists[li];
+                for (int p = offsets[slot]; p < offsets[slot + 1]; p++) {
+                    if (--budget[0] < 0) break scan;
+                    int id = postings[p];
+                    int h = hits[id];
+                    hits[id] = (char) (h = h >= base ? h + 1 : base + 1);
+                    if (h == base + needed && Math.abs(codes[id].length() - query.length()) <= maxDistance) {
+                        candidates[n++] = id;
+                    }
+                }
+            }
+
+            int[] byCount = new int[use + 2];
+            for (int i = 0; i < n; i++) byCount[hits[candidates[i]] - base]++;
+            for (int c = use; c >= 0; c--) byCount[c] += byCount[c + 1]; // start of each count, highest first
+            int[] ordered = counters.ordered;
+            for (int i = 0; i < n; i++) ordered[byCount[hits[candidates[i]] - base + 1]++] = candidates[i];
+
+            long[] peq = positions(query);
+            for (int i = 0; i < n; i++) {
+                String candidate = codes[ordered[i]];
+                if (found.containsKey(candidate)) continue;
+                if (--budget[1] < 0) return;
+                int d = peq != null ? distance(peq, query.length(), candidate, maxDistance)
+                        : bandedDistance(query, candidate, maxDistance);
+                if (d <= maxDistance) found.put(candidate, d);
+            }
+        } finally {
+            spareCounters.offer(counters);
+        }
+    }
+
+    private Counters borrowCounters() {
+        Counters c = spareCounters.poll();
+        return c != null ? c : new Counters(codes.length);
+    }
+
+    /**
+     * Optimal string alignment distance (insert, delete, substitute, swap neighbours), or
+     * {@code max + 1} as soon as it is known to exceed {@code max}.
+     */
+    static int distance(String a, String b, int max) {
+        long[] peq = positions(a);
+        return peq != null ? distance(peq, a.length(), b, max) : bandedDistance(a, b, max);
+    }
+
+    /** Per ASCII character, the bit mask of its positions in the query; null when the query does not fit in a long. */
+    private static long[] positions(String query) {
+        if (query.length() > 64) return null;
+        long[] peq = new long[128];
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (c >= 128) return null;
+            peq[c] |= 1L << i;
+        }
+        return peq;
+    }
+
+    /** Bit-parallel optimal string alignment (Hyyro, 2003): one column of the table per step. */
+    private static int distance(long[] peq, int n, String b, int max) {
+        int m = b.length();
+        if (Math.abs(n - m) > max) return max + 1;
+        if (n == 0) return Math.min(m, max + 1);
+
+        long vp = ~0L;
+        long vn = 0;
+        long d0 = 0;
+        long pmPrev = 0;
+        long last = 1L << (n - 1);
+        int dist = n;
+        for (int j = 0; j < m; j++) {
+            char c = b.charAt(j);
+            long pm = c < 128 ? peq[c] : 0;
+            long tr = ((~d0 & pm) << 1) & pmPrev;
+            d0 = (((pm & vp) + vp) ^ vp) | pm | vn | tr;
+            long hp = vn | ~(d0 | vp);
+            long hn = d0 & vp;
+            if ((hp & last) != 0) dist++;
+            else if ((hn & last) != 0) dist--;
+            hp = (hp << 1) | 1;
+            vp = (hn << 1) | ~(d0 | hp);
+            vn = hp & d0;
+            pmPrev = pm;
+            if (dist - (m - j - 1) > max) return max + 1; // each remaining column lowers it by one at most
+        }
+        return Math.min(dist, max + 1);
+    }
+
+    private static int bandedDistance(String a, String b, int max) {
+        int n = a.length();
+        int m = b.length();
+        int over = max + 1;
+        if (Math.abs(n - m) > max) return over;
+
+        // only the band |i - j| <= max is computed; cells outside it are "over" anyway
+        int[] prev2 = new int[m + 1];
+        int[] prev = new int[m + 1];
+        int[] cur = new int[m + 1];
+        for (int j = 0; j <= m; j++) prev[j] = Math.min(j, over);
+
+        for (int i = 1; i <= n; i++) {
+            int lo = Math.max(1, i - max);
+            int hi = Math.min(m, i + max);
+            cur[0] = Math.min(i, over);
+            if (lo > 1) cur[lo - 1] = over;
+            int rowMin = lo == 1 ? cur[0] : over;
+            char ca = a.charAt(i - 1);
+            for (int j = lo; j <= hi; j++) {
+                char cb = b.charAt(j - 1);
+                int cost = ca == cb ? 0 : 1;
+                int v = Math.min(Math.min(prev[j] + 1, cur[j - 1] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && ca == b.charAt(j - 2) && a.charAt(i - 2) == cb) {
+                    v = Math.min(v, prev2[j - 2] + 1);
+                }
+                cur[j] = v;
+                rowMin = Math.min(rowMin, v);
+            }
+            if (hi < m) cur[hi + 1] = over;
+            if (rowMin > max) return over;
+            int[] t = prev2;
+            prev2 = prev;
+            prev = cur;
+            cur = t;
+        }
+        return Math.min(prev[m], over);
+    }
+
+    // ============================================================
+    // Prefix / suffix variants
+    // ============================================================
+
+    private void addAffixVariants(String query, int limit, Map<String, Integer> found) {
+        // valid codes the query starts or ends with (extra characters typed), at least half its length
+        int minLength = Math.max(3, (query.length() + 1) / 2);
+        for (int len = query.length() - 1; len >= minLength; len--) {
+            addVariant(query.substring(0, len), query, found);
+            addVariant(query.substring(query.length() - len), query, found);
+        }
+
+        // valid codes that start or end with the query (characters missing)
+        int from = lowerBound(codes, query);
+        for (int i = from; i < codes.length && i < from + limit && codes[i].startsWith(query); i++) {
+            addVariant(codes[i], query, found);
+        }
+        String rq = reverse(query);
+        from = lowerBound(reversed, rq);
+        for (int i = from; i < reversed.length && i < from + limit && reversed[i].startsWith(rq); i++) {
+            addVariant(reverse(reversed[i]), query, found);
+        }
+    }
+
+    private void addVariant(String code, String query, Map<String, Integer> found) {
+        if (code.equals(query) || !codeSet.contains(code)) return;
+        found.merge(code, Math.abs(code.length() - query.length()), Math::min);
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int i = Arrays.binarySearch(sorted, key);
+        return i >= 0 ? i : -i - 1;
+    }
+
+    // ============================================================
+    // Helpers
+    // ============================================================
+
+    /** Distinct trigrams of the code padded with two markers on each side, each packed into a long. */
+    private static long[] trigrams(String s) {
+        String p = "\u0001\u0001" + s + "\u0002\u0002";
+        long[] grams = new long[p.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = ((long) p.charAt(i) << 32) | ((long) p.charAt(i + 1) << 16) | p.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int n = 0;
+        for (int i = 0; i < grams.length; i++) {
+            if (i == 0 || grams[i] != grams[i - 1]) grams[n++] = grams[i];
+        }
+        return n == grams.length ? grams : Arrays.copyOf(grams, n);
+    }
+
+    private static String reverse(String s) {
+        return new StringBuilder(s).reverse().toString();
+    }
+
+    /** Open-addressing trigram -> slot table (no boxing), with the number of codes per slot. */
+    private static final class GramTable {
+        private long[] keys = new long[1 << 14]; // 0 = free; stored keys have the top bit set
+        private int[] counts = new int[1 << 14];
+        private int size;
+
+        void add(long gram) {
+            if (size * 2 >= keys.length) grow();
+            long key = gram | Long.MIN_VALUE;
+            int i = probe(keys, key);
+            if (keys[i] == 0) {
+                keys[i] = key;
+                size++;
+            }
+            counts[i]++;
+        }
+
+        /** Slot of the trigram, or -1 when no code has it. */
+        int slot(long gram) {
+            int i = probe(keys, gram | Long.MIN_VALUE);
+            return keys[i] == 0 ? -1 : i;
+        }
+
+        int capacity() {
+            return keys.length;
+        }
+
+        int count(int slot) {
+            return counts[slot];
+        }
+
+        private static int probe(long[] table, long key) {
+            int mask = table.length - 1;
+            long h = key * 0x9E3779B97F4A7C15L;
+            int i = (int) (h ^ (h >>> 32)) & mask;
+            while (table[i] != 0 && table[i] != key) i = (i + 1) & mask;
+            return i;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == 0) continue;
+                int i = probe(keys, oldKeys[j]);
+                keys[i] = oldKeys[j];
+                counts[i] = oldCounts[j];
+            }
+        }
+    }
+
+    /**
+     * Per code id, the number of query trigram lists it was found in during the current pass, and
+     * room for the candidate ids of one pass.
+     * Each pass starts at a higher base instead of clearing the array; values below the base are
+     * stale and count as zero.
+     */
+    private static final class Counters {
+        static final int PASS = 64; // more than the lists read in one pass
+
+        final char[] hits;
+        final int[] candidates = new int[MAX_VISITED];
+        final int[] ordered = new int[MAX_VISITED];
+        private int base = -PASS;
+
+        Counters(int size) {
+            hits = new char[size];
+        }
+
+        int nextPass() {
+            if (base > Character.MAX_VALUE - 2 * PASS) {
+                Arrays.fill(hits, (char) 0);
+                base = -PASS;
+            }
+            base += PASS;
+            return base;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Immutable customer code table (column {@code source_value}) plus the file it came from.
+ * Being immutable, a table can be shared across threads and replaced atomically as a whole.
+ */
+public final class CodeTable {
+
+    public static final CodeTable EMPTY = new CodeTable(Set.of(), null);
+
+    private final Set<String> codes;
+    private final File source;
+    private volatile CodeSuggester suggester; // built on first use, or by prepareSuggestions()
+
+    public CodeTable(Collection<String> codes, File source) {
+        this.codes = Collections.unmodifiableSet(new HashSet<>(codes));
+        this.source = source;
+    }
+
+    public boolean contains(String code) { return codes.contains(code); }
+    public int size() { return codes.size(); }
+    public boolean isEmpty() { return codes.isEmpty(); }
+    public Set<String> getCodes() { return codes; }
+    /** File the codes were loaded from, or null when unknown. */
+    public File getSource() { return source; }
+
+    /** Closest valid codes for a code that is not in the table (typos, prefix / suffix variants). */
+    public List<String> suggest(String code) {
+        if (codes.isEmpty()) return List.of();
+        return suggester().suggest(code);
+    }
+
+    /** Builds the suggestion index now rather than on the first missing code; returns this table. */
+    public CodeTable prepareSuggestions() {
+        if (!codes.isEmpty()) suggester();
+        return this;
+    }
+
+    private CodeSuggester suggester() {
+        CodeSuggester s = suggester;
+        if (s == null) {
+            synchronized (this) {
+                s = suggester;
+                if (s == null) suggester = s = new CodeSuggester(codes);
+            }
+        }
+        return s;
+    }
+
+    // ============================================================
+    // Loading (CSV / XLSX)
+    // ============================================================
+
+    public static CodeTable load(File file) throws IOException {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            try (FileInputStream fis = new FileInputStream(file)) {
+                return new CodeTable(readCsv(fis), file);
+            }
+        }
+        if (name.endsWith(".xlsx")) {
+            return new CodeTable(ExcelSupport.loadCodes(file, CodeTable::normHeader, CbrFileParser::normalizeCode), file);
+        }
+        throw new IllegalArgumentException("Unsupported file type: " + file.getName());
+    }
+
+    static String normHeader(String s) {
+        if (s == null) return "";
+        return s.trim()
+                .replace("\"", "")
+                .toLowerCase(Locale.ROOT)
+                .replace("_", " ");
+    }
+
+    static Set<String> readCsv(InputStream in) throws IOException {
+        Set<String> codes = new HashSet<>();
+
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(in))) {
+
+            String headerLine = br.readLine();
+            if (headerLine == null) return codes;
+
+            String[] headers = headerLine.split(",", -1);
+            int sourceIdx = -1;
+
+            for (int i = 0; i < headers.length; i++) {
+                String h = normHeader(headers[i]);
+                if ("source value".equals(h)) {
+                    sourceIdx = i;
+                    break;
+                }
+            }
+
+            if (sourceIdx < 0) return codes;
+
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] cols = line.split(",", -1);
+                if (cols.length <= sourceIdx) continue;
+
+                String val = cols[sourceIdx].replace("\"", "");
+                val = CbrFileParser.normalizeCode(val);
+                if (!val.isBlank()) codes.add(val);
+            }
+        }
+
+        return codes;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Append-only local file holding per-TID message details for memory-bounded uploads.
+ *
+ * Parsing hands each row's details to {@link #append(String)} and keeps only the returned
+ * {@link Ref}; a background writer appends them to the spill file and records the offset.
+ * At most {@code maxPendingBytes} of details may wait for the writer: when it falls behind,
+ * {@code append} blocks, which throttles parsing instead of letting the heap fill up.
+ * Details are read back with positional reads whenever a row is shown, analyzed or exported.
+ */
+public final class DetailSpillStore implements Closeable {
+
+    public static final int DEFAULT_MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    private static final Ref POISON = new Ref(null, new byte[0]);
+
+    /** Handle to one row's spilled details. */
+    public static final class Ref implements Supplier<String> {
+        private final DetailSpillStore store;
+        private volatile byte[] pending; // non-null until the writer has appended it
+        private volatile long offset = -1;
+        private final int length;
+
+        private Ref(DetailSpillStore store, byte[] bytes) {
+            this.store = store;
+            this.pending = bytes;
+            this.length = bytes.length;
+        }
+
+        @Override
+        public String get() {
+            byte[] p = pending;
+            if (p != null) return new String(p, StandardCharsets.UTF_8);
+            return store.read(offset, length);
+        }
+    }
+
+    private final Path file;
+    private final FileChannel writeChannel;
+    private final FileChannel readChannel;
+    private final BlockingQueue<Ref> queue = new LinkedBlockingQueue<>();
+    private final Semaphore pendingBytes;
+    private final int maxPendingBytes;
+    private final Thread writer;
+
+    private volatile IOException failure;
+    private volatile boolean closed;
+    private volatile long size;
+
+    public DetailSpillStore() throws IOException {
+        this(Files.createTempFile("msc-details-", ".spill"), DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    public DetailSpillStore(Path file, int maxPendingBytes) throws IOException {
+        this.file = file;
+        this.maxPendingBytes = maxPendingBytes;
+        this.pendingBytes = new Semaphore(maxPendingBytes);
+        this.writeChannel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.readChannel = FileChannel.open(file, StandardOpenOption.READ);
+        file.toFile().deleteOnExit();
+
+        this.writer = new Thread(this::writeLoop, "detail-spill-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues details for the spill file. Blocks while the writer is more than
+     * {@code maxPendingBytes} behind.
+     */
+    public Ref append(String details) {
+        checkFailure();
+        if (closed) throw new CancellationException("Spill store closed");
+
+        byte[] bytes = (details == null ? "" : details).getBytes(StandardCharsets.UTF_8);
+        Ref ref = new Ref(this, bytes);
+        if (bytes.length == 0) {
+            ref.offset = 0;
+            ref.pending = null;
+            return ref;
+        }
+
+        try {
+            pendingBytes.acquire(permitsFor(bytes.length));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the spill writer", e);
+        }
+        if (closed) throw new CancellationException("Spill store closed");
+        queue.add(ref);
+        return ref;
+    }
+
+    /** Bytes appended to the spill file so far. */
+    public long size() {
+        return size;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private String read(long offset, int length) {
+        if (length == 0) return "";
+        checkFailure();
+
+        byte[] b = new byte[length];
+        ByteBuffer buf = ByteBuffer.wrap(b);
+        try {
+            long pos = offset;
+            while (buf.hasRemaining()) {
+                int n = readChannel.read(buf, pos);
+                if (n < 0) throw new IOException("Unexpected end of spill file");
+                pos += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private void writeLoop() {
+        long pos = 0;
+        try {
+            while (true) {
+                Ref ref = queue.take();
+                if (ref == POISON) break;
+
+                byte[] bytes = ref.pending;
+                ByteBuffer buf = ByteBuffer.wrap(bytes);
+                while (buf.hasRemaining()) writeChannel.write(buf);
+
+                ref.offset = pos;
+                ref.pending = null; // offset is published before the bytes are dropped
+                pos += bytes.length;
+                size = pos;
+
+                pendingBytes.release(permitsFor(bytes.length));
+            }
+        } catch (IOException e) {
+            failure = e;
+            pendingBytes.release(maxPendingBytes); // unblock producers so they can see the failure
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A single row larger than the whole budget still gets through, it just waits for an empty queue.
+    private int permitsFor(int length) {
+        return Math.min(length, maxPendingBytes);
+    }
+
+    private void checkFailure() {
+        IOException e = failure;
+        if (e != null) throw new UncheckedIOException("Spill writer failed", e);
+    }
+
+    /** Stops the writer and deletes the spill file; rows backed by this store become unreadable. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        pendingBytes.release(maxPendingBytes); // wake producers blocked on a writer that is going away
+        queue.add(POISON);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writeChannel.close();
+            readChannel.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
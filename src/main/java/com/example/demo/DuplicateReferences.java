@@ -0,0 +1,206 @@
+package com.example.demo;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Batch-wide index of BGM document references: which (UNH02, reference) pairs were sent under
+ * more than one TID. Built once per analysis from the details text of every row; rows are
+ * scanned in parallel into concurrent maps.
+ *
+ * With the Bloom pre-pass, a first scan only records every key in a Bloom filter and collects
+ * the keys it has (probably) seen before; the second scan then tracks TIDs for those candidates
+ * alone. Memory is a few bits per message plus the candidates, instead of one map entry per
+ * message, at the cost of reading the details twice.
+ *
+ * TIDs that differ only by a " - copy" suffix count as the same TID (the same file uploaded twice
+ * is not a double booking).
+ */
+final class DuplicateReferences {
+
+    static final DuplicateReferences NONE = new DuplicateReferences(Map.of());
+
+    /** Bloom filter size when the message count is not known up front. */
+    static final long DEFAULT_EXPECTED_MESSAGES = 4_000_000L;
+
+    /** Rows that can be read more than once; the visitor gets (TID, details) and may be called concurrently. */
+    interface Source {
+        void scan(BiConsumer<String, String> visitor) throws IOException;
+    }
+
+    static <T> Source of(List<T> rows, Function<T, String> tid, Function<T, String> details) {
+        return visitor -> IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            T row = rows.get(i);
+            visitor.accept(tid.apply(row), details.apply(row));
+        });
+    }
+
+    private final Map<String, List<String>> tidsByKey; // only references sent under 2+ TIDs
+
+    private DuplicateReferences(Map<String, List<String>> tidsByKey) {
+        this.tidsByKey = tidsByKey;
+    }
+
+    static DuplicateReferences build(Source source, boolean bloomPrePass, long expectedMessages) throws IOException {
+        Set<String> candidates = null;
+        if (bloomPrePass) {
+            BloomFilter seen = new BloomFilter(expectedMessages > 0 ? expectedMessages : DEFAULT_EXPECTED_MESSAGES);
+            Set<String> repeated = ConcurrentHashMap.newKeySet();
+            source.scan((tid, details) -> forEachKey(details, key -> {
+                if (!seen.add(key)) repeated.add(key);
+            }));
+            if (repeated.isEmpty()) return NONE;
+            candidates = repeated;
+        }
+
+        Set<String> only = candidates;
+        ConcurrentHashMap<String, String> firstTid = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Set<String>> duplicated = new ConcurrentHashMap<>();
+        source.scan((tid, details) -> {
+            String t = sameTid(tid);
+            forEachKey(details, key -> {
+                if (only != null && !only.contains(key)) return;
+                String prev = firstTid.putIfAbsent(key, t);
+                if (prev != null && !prev.equals(t)) {
+                    Set<String> tids = duplicated.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+                    tids.add(prev);
+                    tids.add(t);
+                }
+            });
+        });
+
+        if (duplicated.isEmpty()) return NONE;
+        Map<String, List<String>> result = new HashMap<>(duplicated.size() * 2);
+        for (Map.Entry<String, Set<String>> e : duplicated.entrySet()) {
+            List<String> tids = new ArrayList<>(e.getValue());
+            Collections.sort(tids);
+            result.put(e.getKey(), Collections.unmodifiableList(tids));
+        }
+        return new DuplicateReferences(result);
+    }
+
+    /** Rebuilds an index from {@link #asMap()}, e.g. when a saved session is restored. */
+    static DuplicateReferences restore(Map<String, List<String>> tidsByKey) {
+        return tidsByKey.isEmpty() ? NONE : new DuplicateReferences(tidsByKey);
+    }
+
+    /** Duplicated keys ({@code UNH02|reference}) and their sorted TIDs, read-only. */
+    Map<String, List<String>> asMap() {
+        return Collections.unmodifiableMap(tidsByKey);
+    }
+
+    /** Every TID the reference was sent under, sorted; empty when it is not duplicated. */
+    List<String> tids(String unh02, String reference) {
+        if (tidsByKey.isEmpty()) return List.of();
+        List<String> tids = tidsByKey.get(key(unh02, reference));
+        return tids == null ? List.of() : tids;
+    }
+
+    /** Number of references sent under more than one TID. */
+    int size() {
+        return tidsByKey.size();
+    }
+
+    private static String key(String unh02, String reference) {
+        return unh02 + '|' + reference;
+    }
+
+    private static String sameTid(String tid) {
+        return TidLinks.sanitize(tid);
+    }
+
+    /** Keys of the message lines ({@code UNH02|BGM/...}), split the same way as {@link FindingsAnalyzer}. */
+    private static void forEachKey(String details, Consumer<String> action) {
+        if (details == null || details.isEmpty()) return;
+
+        int start = 0;
+        int len = details.length();
+        while (start < len) {
+            int end = details.indexOf('\n', start);
+            if (end < 0) end = len;
+
+            if (end > start) {
+                int bar = details.indexOf('|', start);
+                int slash = bar < 0 ? -1 : details.indexOf('/', bar + 1);
+                if (bar >= 0 && slash >= 0 && slash < end) {
+                    String reference = details.substring(bar + 1, slash).trim();
+                    if (!reference.isEmpty() && !CbrFileParser.NO_BGM.equals(reference)) {
+                        action.accept(key(CbrFileParser.normalizeCode(details.substring(start, bar)), reference));
+                    }
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    // ============================================================
+    // Bloom filter (pre-pass)
+    // ============================================================
+
+    /**
+     * Partitioned Bloom filter, about 10 bits and 7 probes per expected key (~1% false positives).
+     * All probes of a key fall into one segment, so test-and-set is atomic under that segment's
+     * lock while other segments are updated concurrently.
+     */
+    private static final class BloomFilter {
+        private static final int SEGMENTS = 64;
+        private static final int PROBES = 7;
+        private static final int BITS_PER_KEY = 10;
+
+        private final long[][] segments = new long[SEGMENTS][];
+        private final long bitsPerSegment;
+
+        BloomFilter(long expectedKeys) {
+            long words = Math.max(1024, (expectedKeys * BITS_PER_KEY / SEGMENTS + 63) / 64);
+            words = Math.min(words, Integer.MAX_VALUE - 8);
+            for (int i = 0; i < SEGMENTS; i++) segments[i] = new long[(int) words];
+            bitsPerSegment = words * 64;
+        }
+
+        /** Adds the key; false when it was (probably) present already. */
+        boolean add(String key) {
+            long h1 = hash64(key);
+            long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+            long[] bits = segments[(int) (h1 >>> 58)];
+
+            boolean added = false;
+            synchronized (bits) {
+                for (int i = 0; i < PROBES; i++) {
+                    long bit = Math.floorMod(h1 + i * h2, bitsPerSegment);
+                    int word = (int) (bit >>> 6);
+                    long mask = 1L << bit;
+                    if ((bits[word] & mask) == 0) {
+                        bits[word] |= mask;
+                        added = true;
+                    }
+                }
+            }
+            return added;
+        }
+
+        private static long hash64(String s) {
+            long h = 0xcbf29ce484222325L; // FNV-1a over the chars, then a murmur finalizer
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return mix(h);
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+            z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            return z ^ (z >>> 33);
+        }
+    }
+}
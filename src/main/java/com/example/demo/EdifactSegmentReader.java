@@ -0,0 +1,166 @@
+package com.example.demo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams EDIFACT segments from a reader, one segment at a time.
+ *
+ * Honours a leading UNA service string advice (custom separators / release character),
+ * ignores line breaks so segments wrapped across lines are re-joined, and does not split
+ * on a terminator or separator that is escaped with the release character.
+ */
+final class EdifactSegmentReader {
+
+    private final Reader in;
+    private final char[] buf = new char[64 * 1024];
+    private int pos;
+    private int lim;
+    private boolean started;
+
+    private char componentSeparator = ':';
+    private char elementSeparator = '+';
+    private char releaseChar = '?';
+    private char segmentTerminator = '\'';
+
+    private final StringBuilder segment = new StringBuilder(256);
+
+    EdifactSegmentReader(Reader in) {
+        this.in = in;
+    }
+
+    /** Next non-empty segment (trimmed, without terminator), or null at end of input. */
+    String next() throws IOException {
+        if (!started) {
+            started = true;
+            readServiceStringAdvice();
+        }
+
+        segment.setLength(0);
+        int c;
+        while ((c = read()) >= 0) {
+            char ch = (char) c;
+            if (ch == '\r' || ch == '\n') continue;
+
+            if (ch == releaseChar) {
+                segment.append(ch);
+                int escaped = readSkippingLineBreaks();
+                if (escaped >= 0) segment.append((char) escaped);
+                continue;
+            }
+
+            if (ch == segmentTerminator) {
+                String s = segment.toString().trim();
+                segment.setLength(0);
+                if (!s.isEmpty()) return s;
+                continue;
+            }
+
+            segment.append(ch);
+        }
+
+        // trailing segment without terminator (truncated file)
+        String s = segment.toString().trim();
+        segment.setLength(0);
+        return s.isEmpty() ? null : s;
+    }
+
+    /** Splits a segment into its data elements; element 0 is the segment tag. Elements stay escaped. */
+    String[] elements(String seg) {
+        List<String> parts = new ArrayList<>(8);
+        int start = 0;
+        for (int i = 0; i < seg.length(); i++) {
+            char ch = seg.charAt(i);
+            if (ch == releaseChar) {
+                i++;
+            } else if (ch == elementSeparator) {
+                parts.add(seg.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(seg.substring(start));
+        return parts.toArray(new String[0]);
+    }
+
+    /** First component of an element, unescaped. */
+    String firstComponent(String element) {
+        for (int i = 0; i < element.length(); i++) {
+            char ch = element.charAt(i);
+            if (ch == releaseChar) {
+                i++;
+            } else if (ch == componentSeparator) {
+                return unescape(element.substring(0, i));
+            }
+        }
+        return unescape(element);
+    }
+
+    /** Removes release characters, keeping the characters they escape. */
+    String unescape(String value) {
+        if (value.indexOf(releaseChar) < 0) return value;
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == releaseChar && i + 1 < value.length()) ch = value.charAt(++i);
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    /** Segment tag (e.g. "UNH"); the whole segment when it has no data elements. */
+    String tag(String seg) {
+        int sep = seg.indexOf(elementSeparator);
+        return sep < 0 ? seg : seg.substring(0, sep);
+    }
+
+    // ============================================================
+    // UNA + buffered reading
+    // ============================================================
+
+    private void readServiceStringAdvice() throws IOException {
+        // make sure the first 9 characters (+ BOM / leading whitespace) are buffered
+        while (lim - pos < 16 && fill()) { /* keep filling */ }
+
+        while (pos < lim && (buf[pos] == '\uFEFF' || Character.isWhitespace(buf[pos]))) pos++;
+
+        if (lim - pos >= 9 && buf[pos] == 'U' && buf[pos + 1] == 'N' && buf[pos + 2] == 'A') {
+            componentSeparator = buf[pos + 3];
+            elementSeparator = buf[pos + 4];
+            // buf[pos + 5] is the decimal mark
+            char release = buf[pos + 6];
+            releaseChar = (release == ' ') ? '\0' : release;
+            // buf[pos + 7] is reserved / repetition separator
+            segmentTerminator = buf[pos + 8];
+            pos += 9;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos >= lim && !fill()) return -1;
+        return buf[pos++];
+    }
+
+    private int readSkippingLineBreaks() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c == '\r' || c == '\n');
+        return c;
+    }
+
+    /** Appends more input after any unread characters; returns false at end of input. */
+    private boolean fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, lim - pos);
+            lim -= pos;
+            pos = 0;
+        }
+        if (lim == buf.length) return true;
+        int n = in.read(buf, lim, buf.length - lim);
+        if (n <= 0) return false;
+        lim += n;
+        return true;
+    }
+}
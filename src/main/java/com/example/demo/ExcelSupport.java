@@ -0,0 +1,423 @@
+package com.example.demo;
+
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.CreationHelper;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * All Apache POI usage (XLSX code loading, Excel export, sharded findings export, run-to-run diff export).
+ *
+ * Kept out of {@link HelloController} so that neither the controller's verification nor a
+ * TXT-only session resolves any POI/XML classes: this class, and POI with it, is only loaded
+ * the first time an XLSX is read or an export is written.
+ */
+final class ExcelSupport {
+
+    private ExcelSupport() {
+    }
+
+    // ============================================================
+    // Codes (XLSX)
+    // ============================================================
+
+    static Set<String> loadCodes(File file,
+                                 Function<String, String> normHeader,
+                                 Function<String, String> normalizeCode) throws IOException {
+        Set<String> codes = new HashSet<>();
+
+        try (FileInputStream fis = new FileInputStream(file);
+             XSSFWorkbook wb = new XSSFWorkbook(fis)) {
+
+            Sheet sheet = wb.getNumberOfSheets() > 0 ? wb.getSheetAt(0) : null;
+            if (sheet == null) return codes;
+
+            Row header = sheet.getRow(sheet.getFirstRowNum());
+            if (header == null) return codes;
+
+            int sourceIdx = -1;
+            for (int c = 0; c < header.getLastCellNum(); c++) {
+                org.apache.poi.ss.usermodel.Cell cell = header.getCell(c); // POI Cell (fully qualified)
+                if (cell == null) continue;
+                String h = normHeader.apply(cell.toString());
+                if ("source value".equals(h)) {
+                    sourceIdx = c;
+                    break;
+                }
+            }
+
+            if (sourceIdx < 0) return codes;
+
+            int firstDataRow = sheet.getFirstRowNum() + 1;
+            int lastRow = sheet.getLastRowNum();
+
+            for (int r = firstDataRow; r <= lastRow; r++) {
+                Row row = sheet.getRow(r);
+                if (row == null) continue;
+
+                org.apache.poi.ss.usermodel.Cell cell = row.getCell(sourceIdx); // POI Cell (fully qualified)
+                if (cell == null) continue;
+
+                String val = normalizeCode.apply(cell.toString());
+                if (!val.isBlank()) codes.add(val);
+            }
+        }
+
+        return codes;
+    }
+
+    // ============================================================
+    // Export report (one row per TID)
+    // ============================================================
+
+    static void exportReport(File file, List<HelloController.FileItem> items,
+                             Function<HelloController.FileItem, String> errorSummary,
+                             Function<String, String> tidUrl) throws IOException {
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+
+            CreationHelper creationHelper = workbook.getCreationHelper();
+            Sheet sheet = workbook.createSheet("MSC Errors");
+            int rowNum = 0;
+
+            Row header = sheet.createRow(rowNum++);
+            header.createCell(0).setCellValue("Filename");
+            header.createCell(1).setCellValue("TID");
+            header.createCell(2).setCellValue("UNH/NAD Count (with UNH02)");
+            header.createCell(3).setCellValue("UNH02 | Reference Number / NADQUAL=CODE");
+            header.createCell(4).setCellValue("Error Summary");
+
+            CellStyle hlinkStyle = workbook.createCellStyle();
+            Font hlinkFont = workbook.createFont();
+            hlinkFont.setUnderline(Font.U_SINGLE);
+            hlinkFont.setColor(IndexedColors.BLUE.getIndex());
+            hlinkStyle.setFont(hlinkFont);
+
+            CellStyle wrapStyle = workbook.createCellStyle();
+            wrapStyle.setWrapText(true);
+
+            for (HelloController.FileItem item : items) {
+
+                Row row = sheet.createRow(rowNum++);
+
+                row.createCell(0).setCellValue(item.getFilename());
+
+                org.apache.poi.ss.usermodel.Cell tidCell = row.createCell(1); // POI Cell
+                tidCell.setCellValue(item.getTid());
+
+                String url = tidUrl.apply(item.getTid());
+                if (!url.isBlank()) {
+                    org.apache.poi.ss.usermodel.Hyperlink tidHyperlink =
+                            creationHelper.createHyperlink(org.apache.poi.common.usermodel.HyperlinkType.URL);
+
+                    tidHyperlink.setAddress(url);
+                    tidCell.setHyperlink(tidHyperlink);
+                    tidCell.setCellStyle(hlinkStyle);
+                }
+
+                row.createCell(2).setCellValue(item.getUnhCount());
+
+                String doc = item.getDocumentID();
+                org.apache.poi.ss.usermodel.Cell docCell = row.createCell(3);
+                docCell.setCellValue(doc == null ? "" : doc);
+                docCell.setCellStyle(wrapStyle);
+
+                org.apache.poi.ss.usermodel.Cell summaryCell = row.createCell(4);
+                summaryCell.setCellValue(errorSummary.apply(item));
+                summaryCell.setCellStyle(wrapStyle);
+
+                row.setHeight((short) -1);
+            }
+
+            for (int i = 0; i <= 4; i++) sheet.autoSizeColumn(i);
+
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                workbook.write(fos);
+            }
+        }
+    }
+
+    // ============================================================
+    // Per-finding sheets (shared by the run diff and the sharded export)
+    // ============================================================
+
+    static final int MAX_SHEET_ROWS = 1_048_576; // Excel's per-sheet limit, header included
+
+    private static final String[] FINDING_HEADERS = {
+            "TID", "Filename", "UNH02", "Reference Number (BGM)", "NAD Qualifier", "Code", "Error Type", "Detail"
+    };
+    private static final int[] FINDING_WIDTHS = {18, 28, 10, 26, 14, 16, 40, 30};
+
+    private static CellStyle hyperlinkStyle(org.apache.poi.ss.usermodel.Workbook workbook) {
+        CellStyle style = workbook.createCellStyle();
+        Font font = workbook.createFont();
+        font.setUnderline(Font.U_SINGLE);
+        font.setColor(IndexedColors.BLUE.getIndex());
+        style.setFont(font);
+        return style;
+    }
+
+    private static void writeFindingHeader(Sheet sheet) {
+        Row header = sheet.createRow(0);
+        for (int i = 0; i < FINDING_HEADERS.length; i++) header.createCell(i).setCellValue(FINDING_HEADERS[i]);
+        for (int i = 0; i < FINDING_WIDTHS.length; i++) sheet.setColumnWidth(i, FINDING_WIDTHS[i] * 256);
+    }
+
+    private static void writeFindingRow(Row row, Finding f, Function<String, String> tidUrl, CellStyle hlinkStyle) {
+        org.apache.poi.ss.usermodel.Cell tidCell = row.createCell(0); // POI Cell
+        String url = tidUrl.apply(f.getTid());
+        if (url.isBlank()) {
+            tidCell.setCellValue(f.getTid());
+        } else {
+            // formula links stream with the row; Hyperlink objects would stay in memory until the end
+            setLinkFormula(tidCell, url, f.getTid(), hlinkStyle);
+        }
+
+        row.createCell(1).setCellValue(f.getFilename());
+        row.createCell(2).setCellValue(f.getUnh02());
+        row.createCell(3).setCellValue(f.getBgmReference());
+        row.createCell(4).setCellValue(f.getQualifier());
+        row.createCell(5).setCellValue(f.getCode());
+        row.createCell(6).setCellValue(f.getErrorType());
+        row.createCell(7).setCellValue(f.getDetail());
+    }
+
+    private static void setLinkFormula(org.apache.poi.ss.usermodel.Cell cell, String target, String text, CellStyle style) {
+        cell.setCellFormula("HYPERLINK(\"" + target.replace("\"", "\"\"") + "\",\""
+                + text.replace("\"", "\"\"") + "\")");
+        cell.setCellStyle(style);
+    }
+
+    // ============================================================
+    // Sharded findings export (see ShardedExport)
+    // ============================================================
+
+    static FindingsWorkbook openFindingsWorkbook(Function<String, String> tidUrl, boolean withIndex) {
+        return new FindingsWorkbook(tidUrl, withIndex);
+    }
+
+    /**
+     * A streamed workbook of per-finding sheets, optionally preceded by an "Index" sheet. Like
+     * {@link DiffWorkbook} only a small window of rows is kept in memory. Not thread-safe: the
+     * parallel sharded export gives every worker its own workbook file.
+     */
+    static final class FindingsWorkbook implements Closeable {
+
+        private static final String[] INDEX_HEADERS = {
+                "Shard", "Sheet / File", "Message Type (UNH02)", "TIDs", "Findings", "First TID", "Last TID"
+        };
+
+        private final Function<String, String> tidUrl;
+        private final SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+        private final CellStyle hlinkStyle;
+        private final Sheet indexSheet;
+        private final Set<String> sheetNames = new HashSet<>();
+
+        private FindingsWorkbook(Function<String, String> tidUrl, boolean withIndex) {
+            this.tidUrl = tidUrl;
+            workbook.setCompressTempFiles(true);
+            hlinkStyle = hyperlinkStyle(workbook);
+            indexSheet = withIndex ? workbook.createSheet(uniqueSheetName("Index")) : null;
+        }
+
+        /** Starts a findings sheet; past Excel's row limit it continues on "name (2)" etc. */
+        FindingSheet startSheet(String name) {
+            return new FindingSheet(name);
+        }
+
+        final class FindingSheet {
+            private final String name;
+            private final List<String> names = new ArrayList<>(1);
+            private Sheet sheet;
+            private int rowNum;
+
+            private FindingSheet(String name) {
+                this.name = name;
+                nextSheet();
+            }
+
+            void write(Finding f) {
+                if (rowNum >= MAX_SHEET_ROWS) nextSheet();
+                writeFindingRow(sheet.createRow(rowNum++), f, tidUrl, hlinkStyle);
+            }
+
+            /** Names of the sheets written, the first one being the link target. */
+            List<String> getSheetNames() {
+                return names;
+            }
+
+            private void nextSheet() {
+                String sheetName = uniqueSheetName(names.isEmpty() ? name : name + " (" + (names.size() + 1) + ")");
+                names.add(sheetName);
+                sheet = workbook.createSheet(sheetName);
+                writeFindingHeader(sheet);
+                rowNum = 1;
+            }
+        }
+
+        /** Fills the index sheet: one row per shard, linking to its sheet or (for files) its workbook. */
+        void writeIndex(List<ShardedExport.Shard> shards, boolean files) {
+            Row header = indexSheet.createRow(0);
+            for (int i = 0; i < INDEX_HEADERS.length; i++) header.createCell(i).setCellValue(INDEX_HEADERS[i]);
+
+            int rowNum = 1;
+            for (ShardedExport.Shard shard : shards) {
+                Row row = indexSheet.createRow(rowNum++);
+                row.createCell(0).setCellValue(shard.label);
+
+                String target = shard.getTarget();
+                String link = files ? target : "#'" + target.replace("'", "''") + "'!A1";
+                setLinkFormula(row.createCell(1), link, target, hlinkStyle);
+
+                row.createCell(2).setCellValue(shard.messageType == null ? "All" : shard.messageType);
+                row.createCell(3).setCellValue(shard.items.length);
+                row.createCell(4).setCellValue(shard.rows);
+                row.createCell(5).setCellValue(shard.firstTid);
+                row.createCell(6).setCellValue(shard.lastTid);
+            }
+
+            int[] widths = {22, 40, 20, 10, 12, 20, 20};
+            for (int i = 0; i < widths.length; i++) indexSheet.setColumnWidth(i, widths[i] * 256);
+        }
+
+        void write(File file) throws IOException {
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                workbook.write(fos);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.close(); // also deletes the temp files behind the streamed sheets
+        }
+
+        /** Excel sheet names: at most 31 characters, none of []:*?/\ and unique ignoring case. */
+        private String uniqueSheetName(String wanted) {
+            String base = wanted.replaceAll("[\\[\\]:*?/\\\\]", "_").trim();
+            if (base.isEmpty()) base = "Sheet";
+            if (base.length() > 31) base = base.substring(0, 31);
+
+            String candidate = base;
+            for (int n = 2; !sheetNames.add(candidate.toLowerCase(java.util.Locale.ROOT)); n++) {
+                String suffix = "~" + n;
+                candidate = base.substring(0, Math.min(base.length(), 31 - suffix.length())) + suffix;
+            }
+            return candidate;
+        }
+    }
+
+    // ============================================================
+    // Run-to-run diff (streamed, one row per finding)
+    // ============================================================
+
+    static DiffWorkbook openDiff(File file, String previousRun, String currentRun,
+                                 Function<String, String> tidUrl) {
+        return new DiffWorkbook(file, previousRun, currentRun, tidUrl);
+    }
+
+    /**
+     * Receives diff rows as they are produced and streams them to disk (SXSSF keeps only a small
+     * window of rows in memory). A sheet that reaches Excel's row limit continues on "New (2)" etc.
+     * Call {@link #finish} to write the summary sheet and the file; {@link #close} always cleans up.
+     */
+    static final class DiffWorkbook implements FindingsDiff.Sink, Closeable {
+
+        private static final class Part {
+            final String name;
+            Sheet sheet;
+            int rowNum;
+            int count;
+
+            Part(String name) {
+                this.name = name;
+            }
+        }
+
+        private final File file;
+        private final String previousRun;
+        private final String currentRun;
+        private final Function<String, String> tidUrl;
+        private final SXSSFWorkbook workbook = new SXSSFWorkbook(200);
+        private final Sheet summarySheet;
+        private final Map<FindingsDiff.Status, Part> parts = new EnumMap<>(FindingsDiff.Status.class);
+        private final CellStyle hlinkStyle;
+
+        private DiffWorkbook(File file, String previousRun, String currentRun, Function<String, String> tidUrl) {
+            this.file = file;
+            this.previousRun = previousRun;
+            this.currentRun = currentRun;
+            this.tidUrl = tidUrl;
+            workbook.setCompressTempFiles(true);
+
+            hlinkStyle = hyperlinkStyle(workbook);
+
+            summarySheet = workbook.createSheet("Summary");
+            parts.put(FindingsDiff.Status.NEW, new Part("New"));
+            parts.put(FindingsDiff.Status.FIXED, new Part("Fixed"));
+            parts.put(FindingsDiff.Status.UNCHANGED, new Part("Unchanged"));
+            for (Part part : parts.values()) nextSheet(part);
+        }
+
+        @Override
+        public void accept(FindingsDiff.Status status, Finding f) {
+            Part part = parts.get(status);
+            if (part.rowNum >= MAX_SHEET_ROWS) nextSheet(part);
+
+            writeFindingRow(part.sheet.createRow(part.rowNum++), f, tidUrl, hlinkStyle);
+        }
+
+        private void nextSheet(Part part) {
+            part.count++;
+            part.sheet = workbook.createSheet(part.count == 1 ? part.name : part.name + " (" + part.count + ")");
+            writeFindingHeader(part.sheet);
+            part.rowNum = 1;
+        }
+
+        void finish(FindingsDiff.Summary summary) throws IOException {
+            Object[][] rows = {
+                    {"Previous run", previousRun},
+                    {"Current run", currentRun},
+                    {"New errors", summary.newCount},
+                    {"Fixed errors", summary.fixedCount},
+                    {"Unchanged errors", summary.unchangedCount},
+                    {"Findings in previous run", summary.baselineCount},
+                    {"Findings in current run", summary.currentCount},
+                    {"Matched on", "TID + Reference Number (BGM) + Code + Error Type"},
+            };
+            for (int i = 0; i < rows.length; i++) {
+                Row row = summarySheet.createRow(i);
+                row.createCell(0).setCellValue(String.valueOf(rows[i][0]));
+                if (rows[i][1] instanceof Long n) row.createCell(1).setCellValue(n);
+                else row.createCell(1).setCellValue(String.valueOf(rows[i][1]));
+            }
+            summarySheet.setColumnWidth(0, 28 * 256);
+            summarySheet.setColumnWidth(1, 60 * 256);
+
+            try (FileOutputStream fos = new FileOutputStream(file)) {
+                workbook.write(fos);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.close();
+        }
+    }
+}
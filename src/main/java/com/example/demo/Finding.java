@@ -0,0 +1,71 @@
+package com.example.demo;
+
+/**
+ * One per-message error found during analysis (a single UNH..UNT message inside a TID).
+ * Used by the text summary, the Excel export and the machine-readable CSV/JSONL exports.
+ */
+public final class Finding {
+
+    public static final String CODE_NOT_IN_TABLE = "Code does not exist in Customer Code table";
+    public static final String MISSING_REQUIRED_NAD = "Missing required NAD";
+
+    // Batch-wide: the same (UNH02, BGM reference) sent under several TIDs; detail lists them all
+    public static final String DUPLICATE_REFERENCE = "Duplicate BGM reference across TIDs";
+
+    // Envelope integrity (checked by CbrFileParser in the same pass)
+    public static final String UNT_COUNT_MISMATCH = "UNT segment count mismatch";
+    public static final String UNT_REFERENCE_MISMATCH = "UNT reference does not match UNH";
+    public static final String MESSAGE_NOT_TERMINATED = "Message not terminated by UNT";
+    public static final String UNZ_COUNT_MISMATCH = "UNZ message count mismatch";
+    public static final String UNZ_REFERENCE_MISMATCH = "UNZ reference does not match UNB";
+    public static final String INTERCHANGE_NOT_TERMINATED = "Interchange not terminated by UNZ";
+
+    private final String tid;
+    private final String filename;
+    private final String unh02;
+    private final String bgmReference;
+    private final String qualifier; // ZZZ/HI/TB, empty when no NAD was selected
+    private final String code;      // empty when no NAD was selected
+    private final String errorType;
+    private final String detail;    // e.g. "declared 12, actual 11" for envelope errors
+
+    public Finding(String tid, String filename, String unh02, String bgmReference,
+                   String qualifier, String code, String errorType) {
+        this(tid, filename, unh02, bgmReference, qualifier, code, errorType, "");
+    }
+
+    public Finding(String tid, String filename, String unh02, String bgmReference,
+                   String qualifier, String code, String errorType, String detail) {
+        this.tid = tid == null ? "" : tid;
+        this.filename = filename == null ? "" : filename;
+        this.unh02 = unh02 == null ? "" : unh02;
+        this.bgmReference = bgmReference == null ? "" : bgmReference;
+        this.qualifier = qualifier == null ? "" : qualifier;
+        this.code = code == null ? "" : code;
+        this.errorType = errorType == null ? "" : errorType;
+        this.detail = detail == null ? "" : detail;
+    }
+
+    public String getTid() { return tid; }
+    public String getFilename() { return filename; }
+    public String getUnh02() { return unh02; }
+    public String getBgmReference() { return bgmReference; }
+    public String getQualifier() { return qualifier; }
+    public String getCode() { return code; }
+    public String getErrorType() { return errorType; }
+    public String getDetail() { return detail; }
+
+    public boolean isEnvelopeError() {
+        return UNT_COUNT_MISMATCH.equals(errorType)
+                || UNT_REFERENCE_MISMATCH.equals(errorType)
+                || MESSAGE_NOT_TERMINATED.equals(errorType)
+                || UNZ_COUNT_MISMATCH.equals(errorType)
+                || UNZ_REFERENCE_MISMATCH.equals(errorType)
+                || INTERCHANGE_NOT_TERMINATED.equals(errorType);
+    }
+
+    @Override
+    public String toString() {
+        return tid + " " + unh02 + "|" + bgmReference + " " + qualifier + "=" + code + " : " + errorType;
+    }
+}
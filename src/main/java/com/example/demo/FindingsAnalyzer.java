@@ -0,0 +1,172 @@
+package com.example.demo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns the details and envelope text produced by {@link CbrFileParser} into per-message findings,
+ * checking each selected NAD code against a {@link CodeTable}. Shared by the UI and the
+ * HTTP service mode.
+ */
+final class FindingsAnalyzer {
+
+    /** Detail of a missing-code finding that has close valid codes. */
+    static final String SUGGESTION_PREFIX = "Did you mean: ";
+
+    private FindingsAnalyzer() {
+    }
+
+    /** Per-message errors for one TID, in document order, followed by its envelope errors. */
+    static List<Finding> collect(String tid, String filename, String details, String envelope, CodeTable codes) {
+        return collect(tid, filename, details, envelope, codes, DuplicateReferences.NONE);
+    }
+
+    /** As above, also reporting references that the batch index saw under other TIDs. */
+    static List<Finding> collect(String tid, String filename, String details, String envelope, CodeTable codes,
+                                 DuplicateReferences duplicates) {
+
+        List<Finding> findings = new ArrayList<>();
+        collectMessages(findings, tid, filename, details, codes, duplicates);
+        collectEnvelope(findings, tid, filename, envelope);
+        return findings;
+    }
+
+    private static void collectMessages(List<Finding> findings, String tid, String filename, String details,
+                                        CodeTable codes, DuplicateReferences duplicates) {
+
+        if (details == null || details.isBlank()) return;
+
+        for (String rawLine : details.split("\\R")) {
+
+            if (rawLine == null || rawLine.isBlank()) continue;
+
+            String[] p1 = rawLine.split("\\|", 2);
+            if (p1.length < 2) continue;
+
+            String unh02 = CbrFileParser.normalizeCode(p1[0]);
+            String rest = p1[1];
+
+            String[] p2 = rest.split("/", 2);
+            if (p2.length < 2) continue;
+
+            String bgm = p2[0].trim();
+            String nadPart = p2[1].trim();
+
+            List<String> sentUnder = duplicates.tids(unh02, bgm);
+            if (!sentUnder.isEmpty()) {
+                findings.add(new Finding(tid, filename, unh02, bgm, "", "", Finding.DUPLICATE_REFERENCE,
+                        "sent under " + sentUnder.size() + " TIDs: " + String.join(", ", sentUnder)));
+            }
+
+            if ("NO_NAD".equalsIgnoreCase(nadPart)) {
+                findings.add(new Finding(tid, filename, unh02, bgm, "", "", Finding.MISSING_REQUIRED_NAD));
+                continue;
+            }
+
+            String[] qc = nadPart.split("=", 2);
+            if (qc.length < 2) continue;
+
+            String qual = CbrFileParser.normalizeCode(qc[0]);
+            String code = CbrFileParser.normalizeCode(qc[1]);
+
+            if (code.isBlank()) {
+                findings.add(new Finding(tid, filename, unh02, bgm, qual, "", Finding.MISSING_REQUIRED_NAD));
+                continue;
+            }
+
+            if (!codes.contains(code)) {
+                List<String> nearest = codes.suggest(code);
+                findings.add(new Finding(tid, filename, unh02, bgm, qual, code, Finding.CODE_NOT_IN_TABLE,
+                        nearest.isEmpty() ? "" : SUGGESTION_PREFIX + String.join(", ", nearest)));
+            }
+        }
+    }
+
+    /** Envelope lines are {@code <error type>|<UNH02>|<reference>|<detail>}. */
+    private static void collectEnvelope(List<Finding> findings, String tid, String filename, String envelope) {
+
+        if (envelope == null || envelope.isBlank()) return;
+
+        for (String rawLine : envelope.split("\\R")) {
+            String[] e = rawLine.split("\\|", 4);
+            if (e.length < 4) continue;
+            findings.add(new Finding(tid, filename, e[1], e[2], "", "", e[0], e[3]));
+        }
+    }
+
+    /**
+     * Text summary of one TID's findings: missing codes grouped by code, then missing NADs,
+     * then envelope and duplicate-reference errors grouped by type. Used by the results pane and
+     * the Excel report.
+     */
+    static String summarize(List<Finding> findings) {
+
+        List<String> missingRequiredNadLines = new ArrayList<>();
+        Map<String, List<String>> missingCodes = new LinkedHashMap<>();
+        Map<String, String> suggestions = new LinkedHashMap<>();
+        Map<String, List<String>> envelopeErrors = new LinkedHashMap<>();
+
+        for (Finding f : findings) {
+            if (f.isEnvelopeError() || Finding.DUPLICATE_REFERENCE.equals(f.getErrorType())) {
+                String unh02 = f.getUnh02().isBlank() ? "" : " - " + f.getUnh02();
+                envelopeErrors
+                        .computeIfAbsent(f.getErrorType(), k -> new ArrayList<>())
+                        .add(f.getBgmReference() + unh02 + " - " + f.getDetail());
+                continue;
+            }
+
+            String ref = formatReferenceLine(f.getBgmReference(), f.getUnh02());
+            if (Finding.CODE_NOT_IN_TABLE.equals(f.getErrorType())) {
+                missingCodes
+                        .computeIfAbsent(f.getCode(), k -> new ArrayList<>())
+                        .add(ref + " (NAD+" + f.getQualifier() + ")");
+                if (!f.getDetail().isBlank()) suggestions.putIfAbsent(f.getCode(), f.getDetail());
+            } else {
+                missingRequiredNadLines.add(ref);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        for (Map.Entry<String, List<String>> entry : missingCodes.entrySet()) {
+            sb.append("Error: Code does not exist in Customer Code table (")
+                    .append(entry.getKey())
+                    .append(")\n");
+            String suggestion = suggestions.get(entry.getKey());
+            if (suggestion != null) sb.append(suggestion).append("\n");
+            sb.append("Reference Number:\n");
+            for (String line : entry.getValue()) sb.append(line).append("\n");
+            sb.append("\n");
+        }
+
+        if (!missingRequiredNadLines.isEmpty()) {
+            sb.append("Error: Missing required NAD\n");
+            sb.append("Reference Number:\n");
+            for (String line : missingRequiredNadLines) sb.append(line).append("\n");
+            sb.append("\n");
+        }
+
+        for (Map.Entry<String, List<String>> entry : envelopeErrors.entrySet()) {
+            sb.append("Error: ").append(entry.getKey()).append("\n");
+            sb.append("Reference Number:\n");
+            for (String line : entry.getValue()) sb.append(line).append("\n");
+            sb.append("\n");
+        }
+
+        return sb.toString().trim();
+    }
+
+    private static String formatReferenceLine(String documentID, String unh02) {
+        String nadRule;
+        if ("IFTSTA".equals(unh02) || "IFTMBC".equals(unh02)) {
+            nadRule = "NAD+ZZZ";
+        } else if ("APERAK".equals(unh02)) {
+            nadRule = "NAD+HI/TB/ZZZ";
+        } else {
+            nadRule = "NAD";
+        }
+        return documentID + " - " + unh02 + " - " + nadRule;
+    }
+}
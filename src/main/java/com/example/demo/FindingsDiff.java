@@ -0,0 +1,470 @@
+package com.example.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.zip.ZipFile;
+
+/**
+ * Run-to-run comparison of findings: which errors are new, which were fixed, which are unchanged.
+ *
+ * Findings are matched on TID + BGM reference + code (+ error type, so that a fixed UNT mismatch
+ * and a new missing NAD on the same message are not taken for the same error). Duplicate keys are
+ * paired one to one. The baseline is hash-joined in memory when it has at most {@code maxInMemory}
+ * findings; larger runs fall back to an external sort: both sides are written as sorted runs to
+ * temp files, k-way merged and merge-joined, so memory stays bounded for millions of findings.
+ */
+public final class FindingsDiff {
+
+    public enum Status { NEW, FIXED, UNCHANGED }
+
+    @FunctionalInterface
+    public interface Sink {
+        void accept(Status status, Finding finding) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface FindingConsumer {
+        void accept(Finding finding) throws IOException;
+    }
+
+    /** A set of findings that can be streamed more than once (the external sort re-reads it). */
+    @FunctionalInterface
+    public interface Run {
+        void forEach(FindingConsumer consumer) throws IOException;
+    }
+
+    public static final class Summary {
+        public long newCount;
+        public long fixedCount;
+        public long unchangedCount;
+        public long baselineCount;
+        public long currentCount;
+        public boolean externalSort;
+
+        @Override
+        public String toString() {
+            return "New errors: " + newCount + "\n"
+                    + "Fixed errors: " + fixedCount + "\n"
+                    + "Unchanged errors: " + unchangedCount + "\n"
+                    + "(previous run: " + baselineCount + " findings, current run: " + currentCount + " findings"
+                    + (externalSort ? ", compared with external sort" : "") + ")";
+        }
+    }
+
+    /** Hash join limit sized so the baseline index takes at most about a quarter of the heap. */
+    public static final int DEFAULT_MAX_IN_MEMORY =
+            (int) Math.max(10_000, Math.min(5_000_000, Runtime.getRuntime().maxMemory() / 4 / 600));
+
+    private static final char KEY_SEPARATOR = '\u001F';
+
+    private FindingsDiff() {
+    }
+
+    static String key(Finding f) {
+        return f.getTid() + KEY_SEPARATOR + f.getBgmReference() + KEY_SEPARATOR + f.getCode()
+                + KEY_SEPARATOR + f.getErrorType();
+    }
+
+    public static Summary compare(Run baseline, Run current, Sink sink, int maxInMemory) throws IOException {
+        Summary summary = new Summary();
+
+        Map<String, ArrayDeque<Finding>> index = new LinkedHashMap<>();
+        try {
+            baseline.forEach(f -> {
+                if (++summary.baselineCount > maxInMemory) throw new TooLarge();
+                index.computeIfAbsent(key(f), k -> new ArrayDeque<>(1)).add(f);
+            });
+        } catch (TooLarge e) {
+            index.clear();
+            summary.baselineCount = 0;
+            summary.externalSort = true;
+            externalCompare(baseline, current, sink, maxInMemory, summary);
+            return summary;
+        }
+
+        hashCompare(index, current, sink, summary);
+        return summary;
+    }
+
+    /** Signals that the baseline does not fit the in-memory index. */
+    private static final class TooLarge extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this; // control flow only
+        }
+    }
+
+    // ============================================================
+    // Hash join
+    // ============================================================
+
+    private static void hashCompare(Map<String, ArrayDeque<Finding>> index, Run current, Sink sink, Summary summary)
+            throws IOException {
+        current.forEach(f -> {
+            summary.currentCount++;
+            ArrayDeque<Finding> matches = index.get(key(f));
+            if (matches != null && matches.poll() != null) {
+                summary.unchangedCount++;
+                sink.accept(Status.UNCHANGED, f);
+            } else {
+                summary.newCount++;
+                sink.accept(Status.NEW, f);
+            }
+        });
+
+        for (ArrayDeque<Finding> left : index.values()) {
+            for (Finding f : left) {
+                summary.fixedCount++;
+                sink.accept(Status.FIXED, f);
+            }
+        }
+    }
+
+    // ============================================================
+    // External sort + merge join
+    // ============================================================
+
+    private static void externalCompare(Run baseline, Run current, Sink sink, int chunkSize, Summary summary)
+            throws IOException {
+        Path dir = Files.createTempDirectory("msc-diff-");
+        try {
+            List<Path> baselineRuns = writeSortedRuns(baseline, chunkSize, dir, "baseline");
+            List<Path> currentRuns = writeSortedRuns(current, chunkSize, dir, "current");
+
+            try (MergedRuns a = new MergedRuns(baselineRuns); MergedRuns b = new MergedRuns(currentRuns)) {
+                while (a.head != null || b.head != null) {
+                    int c = (a.head == null) ? 1 : (b.head == null) ? -1 : a.headKey.compareTo(b.headKey);
+                    if (c == 0) {
+                        summary.baselineCount++;
+                        summary.currentCount++;
+                        summary.unchangedCount++;
+                        sink.accept(Status.UNCHANGED, b.head);
+                        a.advance();
+                        b.advance();
+                    } else if (c < 0) {
+                        summary.baselineCount++;
+                        summary.fixedCount++;
+                        sink.accept(Status.FIXED, a.head);
+                        a.advance();
+                    } else {
+                        summary.currentCount++;
+                        summary.newCount++;
+                        sink.accept(Status.NEW, b.head);
+                        b.advance();
+                    }
+                }
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static List<Path> writeSortedRuns(Run run, int chunkSize, Path dir, String prefix) throws IOException {
+        List<Path> runs = new ArrayList<>();
+        List<Finding> chunk = new ArrayList<>(Math.min(chunkSize, 1 << 16));
+
+        run.forEach(f -> {
+            chunk.add(f);
+            if (chunk.size() >= chunkSize) {
+                runs.add(writeRun(chunk, dir.resolve(prefix + "-" + runs.size() + ".run")));
+                chunk.clear();
+            }
+        });
+        if (!chunk.isEmpty() || runs.isEmpty()) {
+            runs.add(writeRun(chunk, dir.resolve(prefix + "-" + runs.size() + ".run")));
+        }
+        return runs;
+    }
+
+    private static Path writeRun(List<Finding> chunk, Path file) throws IOException {
+        Finding[] sorted = chunk.toArray(new Finding[0]);
+        String[] keys = new String[sorted.length];
+        for (int i = 0; i < sorted.length; i++) keys[i] = key(sorted[i]);
+
+        Integer[] order = new Integer[sorted.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for (int i : order) {
+                Finding f = sorted[i];
+                out.writeBoolean(true);
+                BinaryIO.writeString(out, f.getTid());
+                BinaryIO.writeString(out, f.getFilename());
+                BinaryIO.writeString(out, f.getUnh02());
+                BinaryIO.writeString(out, f.getBgmReference());
+                BinaryIO.writeString(out, f.getQualifier());
+                BinaryIO.writeString(out, f.getCode());
+                BinaryIO.writeString(out, f.getErrorType());
+                BinaryIO.writeString(out, f.getDetail());
+            }
+            out.writeBoolean(false);
+        }
+        return file;
+    }
+
+    /** K-way merge of sorted run files, exposing the smallest remaining finding as {@code head}. */
+    private static final class MergedRuns implements Closeable {
+
+        private static final class Cursor {
+            final DataInputStream in;
+            Finding finding;
+            String key;
+
+            Cursor(DataInputStream in) {
+                this.in = in;
+            }
+
+            boolean read() throws IOException {
+                if (!in.readBoolean()) return false;
+                finding = new Finding(BinaryIO.readString(in), BinaryIO.readString(in), BinaryIO.readString(in),
+                        BinaryIO.readString(in), BinaryIO.readString(in), BinaryIO.readString(in),
+                        BinaryIO.readString(in), BinaryIO.readString(in));
+                key = key(finding);
+                return true;
+            }
+        }
+
+        private final List<Cursor> cursors = new ArrayList<>();
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing((Cursor c) -> c.key));
+        Finding head;
+        String headKey;
+
+        MergedRuns(List<Path> runs) throws IOException {
+            try {
+                for (Path run : runs) {
+                    Cursor c = new Cursor(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16)));
+                    cursors.add(c);
+                    if (c.read()) queue.add(c);
+                }
+                advance();
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        void advance() throws IOException {
+            Cursor c = queue.poll();
+            if (c == null) {
+                head = null;
+                headKey = null;
+                return;
+            }
+            head = c.finding;
+            headKey = c.key;
+            if (c.read()) queue.add(c);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Cursor c : cursors) c.in.close();
+        }
+    }
+
+    // ============================================================
+    // Runs: saved findings, sessions, batches, the current table
+    // ============================================================
+
+    /**
+     * A saved run ({@code .mscsession} or a findings CSV/JSONL export) or a batch to parse
+     * (ZIP, TXT or folder). Sessions use the codes saved with them; batches use {@code codes}.
+     */
+    public static Run open(File source, CodeTable codes) {
+        String name = source.getName().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".mscsession")) return fromSession(source.toPath());
+        if (!source.isDirectory() && FindingsReader.isFindingsFile(name)) return fromFindingsFile(source.toPath());
+
+        if (codes == null || codes.isEmpty()) {
+            throw new IllegalArgumentException("Codes are required to compare a batch: " + source.getName());
+        }
+        return fromBatch(List.of(source), codes);
+    }
+
+    public static Run fromFindingsFile(Path file) {
+        return consumer -> {
+            try (FindingsReader reader = FindingsReader.open(file)) {
+                Finding f;
+                while ((f = reader.next()) != null) consumer.accept(f);
+            }
+        };
+    }
+
+    public static Run fromSession(Path file) {
+        return consumer -> {
+            try (SessionSnapshot snapshot = SessionSnapshot.open(file)) {
+                String source = snapshot.getCodesSource();
+                CodeTable codes = new CodeTable(snapshot.getCodes(), source.isBlank() ? null : new File(source));
+                fromItems(snapshot.getItems(), codes).forEach(consumer);
+            }
+        };
+    }
+
+    public static Run fromItems(List<HelloController.FileItem> items, CodeTable codes) {
+        DuplicateReferences[] duplicates = new DuplicateReferences[1]; // built on the first pass, reused by re-reads
+        return consumer -> {
+            if (duplicates[0] == null) {
+                long messages = 0;
+                for (HelloController.FileItem item : items) messages += CbrFileParser.messageCount(item.getUnhCount());
+                duplicates[0] = DuplicateReferences.build(
+                        DuplicateReferences.of(items, HelloController.FileItem::getTid, HelloController.FileItem::getDocumentID),
+                        true, messages);
+            }
+            for (HelloController.FileItem item : items) {
+                for (Finding f : FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(),
+                        item.getEnvelope(), codes, duplicates[0])) {
+                    consumer.accept(f);
+                }
+            }
+        };
+    }
+
+    /** Batches are re-parsed on every pass; the duplicate-reference index adds two more (Bloom pre-pass). */
+    public static Run fromBatch(List<File> sources, CodeTable codes) {
+        DuplicateReferences[] duplicates = new DuplicateReferences[1];
+        return consumer -> {
+            if (duplicates[0] == null) {
+                duplicates[0] = DuplicateReferences.build(
+                        visitor -> forEachParsed(sources, r -> visitor.accept(r.tid, r.details)),
+                        true, DuplicateReferences.DEFAULT_EXPECTED_MESSAGES);
+            }
+            forEachParsed(sources, r -> {
+                for (Finding f : FindingsAnalyzer.collect(r.tid, r.filename, r.details, r.envelope, codes, duplicates[0])) {
+                    consumer.accept(f);
+                }
+            });
+        };
+    }
+
+    @FunctionalInterface
+    private interface ParsedConsumer {
+        void accept(CbrFileParser.Result result) throws IOException;
+    }
+
+    private static void forEachParsed(List<File> sources, ParsedConsumer consumer) throws IOException {
+        UploadJob job = new UploadJob();
+        Map<File, ZipFile> zips = new HashMap<>();
+        try (SourceDiscovery discovery = new SourceDiscovery(sources, SourceDiscovery.Filter.ALL, Set.of(), job)) {
+            discovery.start();
+            SourceDiscovery.Entry entry;
+            while ((entry = discovery.take()) != null) {
+                CbrFileParser.Result r;
+                if (entry.zipEntryName != null) {
+                    ZipFile zip = zips.get(entry.file);
+                    if (zip == null) {
+                        zip = new ZipFile(entry.file);
+                        zips.put(entry.file, zip);
+                    }
+                    try (InputStream in = zip.getInputStream(zip.getEntry(entry.zipEntryName))) {
+                        r = CbrFileParser.parse(entry.name, in, job);
+                    }
+                } else {
+                    try (InputStream in = Files.newInputStream(entry.file.toPath())) {
+                        r = CbrFileParser.parse(entry.name, in, job);
+                    }
+                }
+                consumer.accept(r);
+            }
+            // a diff over a partly read batch would report the missing files' errors as fixed
+            List<String> skipped = job.getSkipped();
+            if (!skipped.isEmpty()) throw new IOException("Cannot read " + String.join("; ", skipped));
+        } finally {
+            job.cancel();
+            for (ZipFile zip : zips.values()) zip.close();
+        }
+    }
+
+    // ============================================================
+    // Entry point: --diff <previous> <current> [--codes file] [--out diff.xlsx] [--max-in-memory N]
+    // ============================================================
+
+    public static void main(String[] args) throws IOException {
+        List<String> runs = new ArrayList<>();
+        File codesFile = null;
+        File out = null;
+        int maxInMemory = DEFAULT_MAX_IN_MEMORY;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--codes" -> codesFile = new File(optionValue(args, ++i));
+                    case "--out" -> out = new File(optionValue(args, ++i));
+                    case "--max-in-memory" -> maxInMemory = Integer.parseInt(optionValue(args, ++i));
+                    default -> runs.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            exitWithUsage("--max-in-memory needs a whole number");
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e.getMessage());
+        }
+        if (runs.size() != 2) exitWithUsage(null);
+        if (out != null && !out.getName().toLowerCase(Locale.ROOT).endsWith(".xlsx")) {
+            exitWithUsage("--out must be an .xlsx file");
+        }
+
+        CodeTable codes = codesFile == null ? CodeTable.EMPTY : CodeTable.load(codesFile);
+        File previous = new File(runs.get(0));
+        File current = new File(runs.get(1));
+
+        long started = System.nanoTime();
+        Summary summary;
+        if (out == null) {
+            summary = compare(open(previous, codes), open(current, codes), (s, f) -> { }, maxInMemory);
+        } else {
+            try (ExcelSupport.DiffWorkbook workbook = ExcelSupport.openDiff(out, previous.getName(), current.getName(),
+                    TidLinks::storyUrl)) {
+                summary = compare(open(previous, codes), open(current, codes), workbook, maxInMemory);
+                workbook.finish(summary);
+            }
+        }
+
+        System.out.println(summary);
+        System.out.printf("Compared in %.1f s%s%n", (System.nanoTime() - started) / 1_000_000_000.0,
+                out == null ? "" : " • written to " + out.getAbsolutePath());
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private static void exitWithUsage(String problem) {
+        if (problem != null) System.err.println(problem);
+        System.err.println("Usage: --diff <previous run> <current run> [--codes file] [--out diff.xlsx] [--max-in-memory N]");
+        System.exit(2);
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.demo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams findings to CSV or JSON Lines through a buffered NIO channel, optionally gzip-compressed.
+ * Records are encoded straight into a reusable direct buffer, so memory stays flat regardless of
+ * how many findings are written.
+ */
+public final class FindingsExporter implements Closeable {
+
+    public enum Format { CSV, JSONL }
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private static final String[] COLUMNS = {
+            "tid", "filename", "unh02", "bgm_reference", "qualifier", "code", "error_type", "detail", "tid_url"
+    };
+
+    private final Format format;
+    private final Function<String, String> tidUrl;
+    private final FileChannel fileChannel;
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final StringBuilder record = new StringBuilder(256);
+
+    private long records;
+    private boolean closed;
+
+    private FindingsExporter(Format format, boolean gzip, Path target, Function<String, String> tidUrl) throws IOException {
+        this.format = format;
+        this.tidUrl = tidUrl;
+        this.fileChannel = FileChannel.open(target,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        this.channel = gzip
+                ? Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(fileChannel), BUFFER_SIZE))
+                : fileChannel;
+    }
+
+    /**
+     * Opens an exporter whose format and compression follow the file name:
+     * {@code .csv}, {@code .jsonl} / {@code .ndjson}, each optionally followed by {@code .gz}.
+     */
+    public static FindingsExporter open(Path target, Function<String, String> tidUrl) throws IOException {
+        String name = target.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+
+        Format format = (name.endsWith(".jsonl") || name.endsWith(".ndjson")) ? Format.JSONL : Format.CSV;
+        return open(target, format, gzip, tidUrl);
+    }
+
+    public static FindingsExporter open(Path target, Format format, boolean gzip, Function<String, String> tidUrl) throws IOException {
+        FindingsExporter exporter = new FindingsExporter(format, gzip, target, tidUrl);
+        if (format == Format.CSV) exporter.writeCsvHeader();
+        return exporter;
+    }
+
+    public void write(Finding f) throws IOException {
+        record.setLength(0);
+
+        String[] values = values(f, tidUrl.apply(f.getTid()));
+
+        if (format == Format.CSV) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) record.append(',');
+                appendCsv(values[i]);
+            }
+            record.append("\r\n");
+        } else {
+            appendJsonObject(record, values);
+            record.append('\n');
+        }
+
+        put(record);
+        records++;
+    }
+
+    public long getRecords() { return records; }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            drain();
+        } finally {
+            channel.close();
+            if (channel != fileChannel) fileChannel.close();
+        }
+    }
+
+    // ============================================================
+    // Encoding
+    // ============================================================
+
+    private void writeCsvHeader() throws IOException {
+        record.setLength(0);
+        record.append(String.join(",", COLUMNS)).append("\r\n");
+        put(record);
+    }
+
+    private void appendCsv(String v) {
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            record.append(v);
+            return;
+        }
+        record.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            if (c == '"') record.append('"');
+            record.append(c);
+        }
+        record.append('"');
+    }
+
+    private static String[] values(Finding f, String url) {
+        return new String[] {
+                f.getTid(), f.getFilename(), f.getUnh02(), f.getBgmReference(),
+                f.getQualifier(), f.getCode(), f.getErrorType(), f.getDetail(), url
+        };
+    }
+
+    /** Appends one finding as a JSON object with the same field names as the JSONL export. */
+    static void appendJson(StringBuilder sb, Finding f, String url) {
+        appendJsonObject(sb, values(f, url));
+    }
+
+    private static void appendJsonObject(StringBuilder sb, String[] values) {
+        sb.append('{');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(COLUMNS[i]).append("\":");
+            appendJsonString(sb, values[i]);
+        }
+        sb.append('}');
+    }
+
+    static void appendJsonString(StringBuilder record, String v) {
+        record.append('"');
+        for (int i = 0; i < v.length(); i++) {
+            char c = v.charAt(i);
+            switch (c) {
+                case '"' -> record.append("\\\"");
+                case '\\' -> record.append("\\\\");
+                case '\n' -> record.append("\\n");
+                case '\r' -> record.append("\\r");
+                case '\t' -> record.append("\\t");
+                default -> {
+                    if (c < 0x20) record.append(String.format("\\u%04x", (int) c));
+                    else record.append(c);
+                }
+            }
+        }
+        record.append('"');
+    }
+
+    private void put(CharSequence cs) throws IOException {
+        byte[] bytes = cs.toString().getBytes(StandardCharsets.UTF_8);
+
+        int off = 0;
+        while (off < bytes.length) {
+            if (!buffer.hasRemaining()) drain();
+            int n = Math.min(buffer.remaining(), bytes.length - off);
+            buffer.put(bytes, off, n);
+            off += n;
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+}
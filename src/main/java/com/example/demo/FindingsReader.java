@@ -0,0 +1,213 @@
+package com.example.demo;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads back the CSV / JSON Lines files written by {@link FindingsExporter}, one finding at a
+ * time, so a saved run can be compared without loading it whole. Format and compression follow
+ * the file name, as for the exporter. Columns are matched by name; unknown ones are ignored.
+ */
+public final class FindingsReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final FindingsExporter.Format format;
+    private final StringBuilder field = new StringBuilder(64);
+    private Map<String, Integer> csvColumns;
+
+    private FindingsReader(BufferedReader reader, FindingsExporter.Format format) {
+        this.reader = reader;
+        this.format = format;
+    }
+
+    public static FindingsReader open(Path source) throws IOException {
+        String name = source.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) name = name.substring(0, name.length() - 3);
+        FindingsExporter.Format format = (name.endsWith(".jsonl") || name.endsWith(".ndjson"))
+                ? FindingsExporter.Format.JSONL
+                : FindingsExporter.Format.CSV;
+
+        InputStream in = Files.newInputStream(source);
+        if (gzip) in = new GZIPInputStream(in, 64 * 1024);
+        return new FindingsReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024), format);
+    }
+
+    /** True for file names the exporter produces ({@code .csv}, {@code .jsonl}, {@code .ndjson}, optionally {@code .gz}). */
+    public static boolean isFindingsFile(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".gz")) name = name.substring(0, name.length() - 3);
+        return name.endsWith(".csv") || name.endsWith(".jsonl") || name.endsWith(".ndjson");
+    }
+
+    /** Next finding, or null at end of file. */
+    public Finding next() throws IOException {
+        return format == FindingsExporter.Format.CSV ? nextCsv() : nextJson();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static Finding toFinding(Map<String, String> values) {
+        return new Finding(values.get("tid"), values.get("filename"), values.get("unh02"),
+                values.get("bgm_reference"), values.get("qualifier"), values.get("code"),
+                values.get("error_type"), values.get("detail"));
+    }
+
+    // ============================================================
+    // CSV (RFC 4180 quoting, fields may span lines)
+    // ============================================================
+
+    private Finding nextCsv() throws IOException {
+        if (csvColumns == null) {
+            List<String> header = readCsvRecord();
+            if (header == null) return null;
+            csvColumns = new HashMap<>();
+            for (int i = 0; i < header.size(); i++) csvColumns.put(header.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+
+        List<String> record;
+        do {
+            record = readCsvRecord();
+            if (record == null) return null;
+        } while (record.size() == 1 && record.get(0).isEmpty()); // blank line
+
+        Map<String, String> values = new HashMap<>();
+        for (Map.Entry<String, Integer> c : csvColumns.entrySet()) {
+            if (c.getValue() < record.size()) values.put(c.getKey(), record.get(c.getValue()));
+        }
+        return toFinding(values);
+    }
+
+    private List<String> readCsvRecord() throws IOException {
+        int c = reader.read();
+        if (c < 0) return null;
+
+        List<String> fields = new ArrayList<>(10);
+        field.setLength(0);
+        boolean quoted = false;
+
+        while (c >= 0) {
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    reader.mark(1);
+                    int n = reader.read();
+                    if (n == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (n >= 0) reader.reset();
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\r' || ch == '\n') {
+                if (ch == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') reader.reset();
+                }
+                break;
+            } else {
+                field.append(ch);
+            }
+            c = reader.read();
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+
+    // ============================================================
+    // JSON Lines (one flat object per line)
+    // ============================================================
+
+    private Finding nextJson() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            if (line == null) return null;
+        } while (line.isBlank());
+
+        Map<String, String> values = new HashMap<>();
+        int[] pos = {line.indexOf('{') + 1};
+        while (true) {
+            skipWhitespace(line, pos);
+            if (pos[0] >= line.length() || line.charAt(pos[0]) == '}') break;
+            if (line.charAt(pos[0]) == ',') {
+                pos[0]++;
+                continue;
+            }
+            String key = readJsonString(line, pos);
+            skipWhitespace(line, pos);
+            if (pos[0] < line.length() && line.charAt(pos[0]) == ':') pos[0]++;
+            skipWhitespace(line, pos);
+            values.put(key, readJsonValue(line, pos));
+        }
+        return toFinding(values);
+    }
+
+    private static void skipWhitespace(String s, int[] pos) {
+        while (pos[0] < s.length() && Character.isWhitespace(s.charAt(pos[0]))) pos[0]++;
+    }
+
+    private String readJsonValue(String s, int[] pos) throws IOException {
+        if (pos[0] < s.length() && s.charAt(pos[0]) == '"') return readJsonString(s, pos);
+        // number / true / false / null: keep the raw token
+        int start = pos[0];
+        while (pos[0] < s.length() && s.charAt(pos[0]) != ',' && s.charAt(pos[0]) != '}') pos[0]++;
+        String raw = s.substring(start, pos[0]).trim();
+        return "null".equals(raw) ? "" : raw;
+    }
+
+    private String readJsonString(String s, int[] pos) throws IOException {
+        if (pos[0] >= s.length() || s.charAt(pos[0]) != '"') throw new IOException("Malformed JSON line: " + s);
+        field.setLength(0);
+        int i = pos[0] + 1;
+        while (i < s.length()) {
+            char ch = s.charAt(i++);
+            if (ch == '"') {
+                pos[0] = i;
+                return field.toString();
+            }
+            if (ch != '\\' || i >= s.length()) {
+                field.append(ch);
+                continue;
+            }
+            char esc = s.charAt(i++);
+            switch (esc) {
+                case 'n' -> field.append('\n');
+                case 'r' -> field.append('\r');
+                case 't' -> field.append('\t');
+                case 'b' -> field.append('\b');
+                case 'f' -> field.append('\f');
+                case 'u' -> {
+                    if (i + 4 > s.length()) throw new IOException("Malformed JSON escape: " + s);
+                    field.append((char) Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 4;
+                }
+                default -> field.append(esc); // \" \\ \/
+            }
+        }
+        throw new IOException("Unterminated JSON string: " + s);
+    }
+}
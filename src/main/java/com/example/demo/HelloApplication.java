@@ -1,10 +1,13 @@
 package com.example.demo;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.IOException;
 
@@ -29,6 +32,20 @@ public class HelloApplication extends Application {
         stage.setTitle("MSC CBR Error Detector");
         stage.setScene(scene);
         stage.show();
+
+        // -Dmsc.startupTiming=true: report time from process start to first window (CDS on/off comparisons)
+        if (Boolean.getBoolean("msc.startupTiming")) {
+            ProcessHandle.current().info().startInstant().ifPresent(start ->
+                    System.out.println("Time to first window: "
+                            + java.time.Duration.between(start, java.time.Instant.now()).toMillis() + " ms"));
+        }
+
+        // -Dmsc.cdsTraining=true: used when dumping the AppCDS archive; let the first frames render, then exit
+        if (Boolean.getBoolean("msc.cdsTraining")) {
+            PauseTransition settle = new PauseTransition(Duration.seconds(3));
+            settle.setOnFinished(e -> Platform.exit());
+            settle.play();
+        }
     }
 
     public static void main(String[] args) {
@@ -4,15 +4,24 @@ import javafx.application.HostServices;
 import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.WeakChangeListener;
 import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.concurrent.Task;
 import javafx.css.PseudoClass;
 import javafx.fxml.FXML;
 
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceDialog;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.ContentDisplay;
 import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
@@ -21,28 +30,26 @@ import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableRow;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
+import javafx.scene.input.Dragboard;
+import javafx.scene.input.TransferMode;
 
 import javafx.scene.layout.BorderPane;
 import javafx.scene.text.Text;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.CreationHelper;
-import org.apache.poi.ss.usermodel.Font;
-import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-
 import java.io.*;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 public class HelloController {
 
@@ -51,6 +58,8 @@ public class HelloController {
 
     // Action buttons (left panel)
     @FXML private Button uploadButton;
+    @FXML private Button cancelUploadButton;
+    @FXML private Button resumeUploadButton;
     @FXML private Button loadCodesButton;
 
     // Left panel status labels (NEW)
@@ -75,16 +84,51 @@ public class HelloController {
     // Analyze/Export
     @FXML private Button analyzeButton;
     @FXML private Button exportButton;
+    @FXML private Button exportFindingsButton;
+    @FXML private Button exportShardedButton;
+    @FXML private Button compareRunsButton;
 
     // Codes UI
     @FXML private Label codesStatusLabel;
 
     private final ObservableList<FileItem> fileItems = FXCollections.observableArrayList();
+
+    // Table shows the filtered view, sorted by its columns; exports follow it, session save and run diff use all rows
+    private final FilteredList<FileItem> visibleItems = new FilteredList<>(fileItems);
+    private final SortedList<FileItem> sortedItems = new SortedList<>(visibleItems);
+    private final ResultIndex resultIndex = new ResultIndex();
+    @FXML private TextField searchField;
+    @FXML private ComboBox<String> messageTypeFilter;
+    @FXML private ComboBox<String> qualifierFilter;
+    @FXML private ComboBox<String> errorTypeFilter;
+    @FXML private Label filterCountLabel;
     private HostServices hostServices;
 
-    // Codes loaded from CSV/XLSX (column: source_value or source value)
-    private final Set<String> validCodes = new HashSet<>();
-    private File lastCodesFile = null;
+    // Upload job management: only the current job may publish rows; others are stale
+    private volatile UploadJob currentJob;
+    private final Path checkpointFile = UploadCheckpoint.defaultFile();
+
+    // Codes loaded from CSV/XLSX (column: source_value or source value); replaced as a whole
+    private CodeTable codeTable = CodeTable.EMPTY;
+
+    // Batch-wide (UNH02, BGM reference) -> TIDs index, rebuilt by every analysis
+    private DuplicateReferences duplicates = DuplicateReferences.NONE;
+    private Task<DuplicateReferences> duplicateIndexTask; // the build whose result is still wanted, if any
+
+    // Last analysis totals (persisted with the session)
+    private int lastTidsWithErrors = 0;
+    private int lastTotalErrorTypes = 0;
+
+    // Memory-bounded mode: per-message details live in a spill file, only row summaries stay on the heap
+    @FXML private CheckBox memoryBoundedCheckBox;
+    private DetailSpillStore spillStore;
+
+    // Folder uploads / drops: ;-separated globs on file names or relative paths
+    @FXML private TextField includeGlobField;
+    @FXML private TextField excludeGlobField;
+
+    // Restored session backing the lazily loaded row details (null when rows were parsed in this run)
+    private SessionSnapshot openSnapshot;
 
     // Observable flag so Analyze button updates when codes are loaded
     private final BooleanProperty codesLoaded = new SimpleBooleanProperty(false);
@@ -103,7 +147,10 @@ public class HelloController {
         filenameColumn.setCellValueFactory(data -> data.getValue().filenameProperty());
         tidColumn.setCellValueFactory(data -> data.getValue().tidProperty());
         unhCountColumn.setCellValueFactory(data -> data.getValue().unhCountProperty());
-        documentIDColumn.setCellValueFactory(data -> data.getValue().documentIDProperty());
+        // Spilled details are paged in for the visible cells only and never cached on the row
+        documentIDColumn.setCellValueFactory(data -> data.getValue().isDetailPaged()
+                ? new ReadOnlyStringWrapper(data.getValue().getDocumentID())
+                : data.getValue().documentIDProperty());
 
         // TID column as JavaFX Hyperlink (Fully qualified to avoid ambiguity)
         tidColumn.setCellFactory(tc -> new TableCell<>() {
@@ -112,11 +159,8 @@ public class HelloController {
                 link.setOnAction(event -> {
                     FileItem item = getTableView().getItems().get(getIndex());
                     if (item != null && hostServices != null) {
-                        String tidForUrl = sanitizeTidForUrl(item.getTid());
-                        if (tidForUrl == null || tidForUrl.isBlank()) return;
-
-                        String url = "https://www.myvan.descartes.com/DocTrackingCore/Document/RetrieveTidStory?tid="
-                                + urlEncode(tidForUrl);
+                        String url = TidLinks.storyUrl(item.getTid());
+                        if (url.isBlank()) return;
 
                         hostServices.showDocument(url);
                     }
@@ -154,32 +198,37 @@ public class HelloController {
             }
         });
 
-        tableView.setItems(fileItems);
+        sortedItems.comparatorProperty().bind(tableView.comparatorProperty());
+        tableView.setItems(sortedItems);
         tableView.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        installDropTarget();
+        installResultFilter();
 
-        // Row highlighting based on FileItem.hasErrors
-        tableView.setRowFactory(tv -> {
-            TableRow<FileItem> row = new TableRow<>();
+        // Row highlighting based on FileItem.hasErrors.
+        // Each row keeps exactly one subscription: it is moved from the old item to the new one when the
+        // row is reused, and registered weakly so rows discarded by the skin never pin themselves to an item.
+        tableView.setRowFactory(tv -> new TableRow<>() {
+            private final ErrorStateSubscription subscription = new ErrorStateSubscription(this::applyErrorState);
 
-            row.itemProperty().addListener((obs, oldItem, newItem) -> {
-                row.pseudoClassStateChanged(PC_ERROR, false);
-                row.pseudoClassStateChanged(PC_CLEAN, false);
+            @Override
+            protected void updateItem(FileItem item, boolean empty) {
+                super.updateItem(item, empty);
 
-                if (newItem == null) return;
+                FileItem target = empty ? null : item;
+                subscription.observe(target);
 
-                newItem.hasErrorsProperty().addListener((o, oldV, newV) -> {
-                    if (row.getItem() == newItem) {
-                        row.pseudoClassStateChanged(PC_ERROR, Boolean.TRUE.equals(newV));
-                        row.pseudoClassStateChanged(PC_CLEAN, !Boolean.TRUE.equals(newV));
-                    }
-                });
-
-                boolean isError = newItem.hasErrorsProperty().get();
-                row.pseudoClassStateChanged(PC_ERROR, isError);
-                row.pseudoClassStateChanged(PC_CLEAN, !isError);
-            });
+                if (target == null) {
+                    pseudoClassStateChanged(PC_ERROR, false);
+                    pseudoClassStateChanged(PC_CLEAN, false);
+                } else {
+                    applyErrorState(target.hasErrors());
+                }
+            }
 
-            return row;
+            private void applyErrorState(boolean isError) {
+                pseudoClassStateChanged(PC_ERROR, isError);
+                pseudoClassStateChanged(PC_CLEAN, !isError);
+            }
         });
 
         progressBar.setProgress(0);
@@ -192,9 +241,15 @@ public class HelloController {
         );
 
         exportButton.setDisable(true);
+        if (exportFindingsButton != null) exportFindingsButton.disableProperty().bind(exportButton.disableProperty());
+        if (exportShardedButton != null) exportShardedButton.disableProperty().bind(exportButton.disableProperty());
+        if (compareRunsButton != null) compareRunsButton.disableProperty().bind(analyzeButton.disableProperty());
         updateCodesStatusLabel();
 
-        setStatus("Idle");
+        refreshUploadButtons();
+        setStatus(UploadCheckpoint.exists(checkpointFile)
+                ? "Interrupted upload found. Click Resume to continue."
+                : "Idle");
         updateCounts(fileItems.size(), 0, 0);
     }
 
@@ -212,23 +267,6 @@ public class HelloController {
         }
     }
 
-    // ============================================================
-    // URL helpers
-    // ============================================================
-
-    private String sanitizeTidForUrl(String tid) {
-        if (tid == null) return "";
-        String t = tid.trim();
-        if (t.toLowerCase(Locale.ROOT).endsWith(" - copy")) {
-            t = t.substring(0, t.length() - " - copy".length()).trim();
-        }
-        return t;
-    }
-
-    private String urlEncode(String s) {
-        return URLEncoder.encode(s, StandardCharsets.UTF_8);
-    }
-
     // ============================================================
     // Codes Loader (CSV / XLSX)
     // ============================================================
@@ -246,157 +284,101 @@ public class HelloController {
         File file = chooser.showOpenDialog(new Stage());
         if (file == null) return;
 
-        try {
-            Set<String> loaded = loadCodesFromFile(file);
-
-            if (loaded.isEmpty()) {
-                validCodes.clear();
-                lastCodesFile = file;
-                codesLoaded.set(false);
-                updateCodesStatusLabel();
-
-                resultsTextArea.clear();
-                exportButton.setDisable(true);
-
-                showInfo("Load Codes", "No codes found.",
-                        "Make sure your file contains a column named 'source_value' (or 'source value').");
-                setStatus("Codes not loaded.");
-                return;
+        // reading a large sheet and building the suggestion index takes a while; the current
+        // table stays in use until the new one is ready
+        Task<CodeTable> task = new Task<>() {
+            @Override
+            protected CodeTable call() throws Exception {
+                return CodeTable.load(file).prepareSuggestions();
             }
-
-            validCodes.clear();
-            validCodes.addAll(loaded);
-            lastCodesFile = file;
-            codesLoaded.set(true);
-
-            // reset outputs + highlighting
-            resultsTextArea.clear();
-            exportButton.setDisable(true);
-            for (FileItem item : fileItems) item.setHasErrors(false);
-            tableView.refresh();
-
-            updateCodesStatusLabel();
-
-            showInfo("Load Codes", "Codes loaded successfully.",
-                    "Loaded " + validCodes.size() + " codes from column: source_value");
-
-            setStatus("Codes loaded. Ready to analyze.");
-
-        } catch (Exception e) {
-            e.printStackTrace();
+        };
+        task.setOnSucceeded(e -> codesReady(task.getValue()));
+        task.setOnFailed(e -> {
+            Throwable ex = task.getException();
+            ex.printStackTrace();
             codesLoaded.set(false);
             updateCodesStatusLabel();
-            showError("Load Codes", "Failed to load codes file.", e.getMessage());
+            showError("Load Codes", "Failed to load codes file.", ex.getMessage());
             setStatus("Failed to load codes.");
-        }
-    }
-
-    private Set<String> loadCodesFromFile(File file) throws Exception {
-        String name = file.getName().toLowerCase(Locale.ROOT);
-        if (name.endsWith(".csv")) return loadCodesFromCsv(file);
-        if (name.endsWith(".xlsx")) return loadCodesFromXlsx(file);
-        throw new IllegalArgumentException("Unsupported file type: " + file.getName());
-    }
-
-    private String normalizeCode(String s) {
-        if (s == null) return "";
-        return s.trim().toUpperCase(Locale.ROOT);
-    }
+        });
+        if (loadCodesButton != null) loadCodesButton.disableProperty().bind(task.runningProperty());
 
-    private String normHeader(String s) {
-        if (s == null) return "";
-        return s.trim()
-                .replace("\"", "")
-                .toLowerCase(Locale.ROOT)
-                .replace("_", " ");
+        setStatus("Loading codes from " + file.getName() + "...");
+        Thread thread = new Thread(task, "load-codes-task");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private Set<String> loadCodesFromCsv(File file) throws IOException {
-        Set<String> codes = new HashSet<>();
-
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(file)))) {
-
-            String headerLine = br.readLine();
-            if (headerLine == null) return codes;
-
-            String[] headers = headerLine.split(",", -1);
-            int sourceIdx = -1;
-
-            for (int i = 0; i < headers.length; i++) {
-                String h = normHeader(headers[i]);
-                if ("source value".equals(h)) {
-                    sourceIdx = i;
-                    break;
-                }
-            }
-
-            if (sourceIdx < 0) return codes;
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] cols = line.split(",", -1);
-                if (cols.length <= sourceIdx) continue;
-
-                String val = cols[sourceIdx].replace("\"", "");
-                val = normalizeCode(val);
-                if (!val.isBlank()) codes.add(val);
+    /**
+     * Builds the suggestion index of a table that is already in use (restored session) on a
+     * worker, as loading codes does; until it is ready, the first lookup that needs it waits for it.
+     */
+    private static void prepareSuggestionsInBackground(CodeTable table) {
+        if (table.isEmpty()) return;
+        Task<CodeTable> task = new Task<>() {
+            @Override
+            protected CodeTable call() {
+                return table.prepareSuggestions();
             }
-        }
+        };
+        task.setOnFailed(e -> task.getException().printStackTrace());
 
-        return codes;
+        Thread thread = new Thread(task, "prepare-suggestions-task");
+        thread.setDaemon(true);
+        thread.start();
     }
 
-    private Set<String> loadCodesFromXlsx(File file) throws IOException {
-        Set<String> codes = new HashSet<>();
-
-        try (FileInputStream fis = new FileInputStream(file);
-             XSSFWorkbook wb = new XSSFWorkbook(fis)) {
-
-            Sheet sheet = wb.getNumberOfSheets() > 0 ? wb.getSheetAt(0) : null;
-            if (sheet == null) return codes;
+    private void codesReady(CodeTable loaded) {
+        if (loaded.isEmpty()) {
+            codeTable = loaded;
+            codesLoaded.set(false);
+            updateCodesStatusLabel();
 
-            Row header = sheet.getRow(sheet.getFirstRowNum());
-            if (header == null) return codes;
+            resultsTextArea.clear();
+            exportButton.setDisable(true);
 
-            int sourceIdx = -1;
-            for (int c = 0; c < header.getLastCellNum(); c++) {
-                org.apache.poi.ss.usermodel.Cell cell = header.getCell(c); // POI Cell (fully qualified)
-                if (cell == null) continue;
-                String h = normHeader(cell.toString());
-                if ("source value".equals(h)) {
-                    sourceIdx = c;
-                    break;
-                }
-            }
+            showInfo("Load Codes", "No codes found.",
+                    "Make sure your file contains a column named 'source_value' (or 'source value').");
+            setStatus("Codes not loaded.");
+            return;
+        }
 
-            if (sourceIdx < 0) return codes;
+        codeTable = loaded;
+        codesLoaded.set(true);
 
-            int firstDataRow = sheet.getFirstRowNum() + 1;
-            int lastRow = sheet.getLastRowNum();
+        // reset outputs + highlighting
+        resultsTextArea.clear();
+        exportButton.setDisable(true);
+        for (FileItem item : fileItems) {
+            item.setHasErrors(false);
+            item.getIndexTerms().errorTypes = Set.of();
+        }
+        resultIndex.clearFacet(ResultIndex.Facet.ERROR_TYPE);
+        refreshFilterChoices();
+        applyResultFilter();
+        tableView.refresh();
 
-            for (int r = firstDataRow; r <= lastRow; r++) {
-                Row row = sheet.getRow(r);
-                if (row == null) continue;
+        updateCodesStatusLabel();
 
-                org.apache.poi.ss.usermodel.Cell cell = row.getCell(sourceIdx); // POI Cell (fully qualified)
-                if (cell == null) continue;
+        showInfo("Load Codes", "Codes loaded successfully.",
+                "Loaded " + codeTable.size() + " codes from column: source_value");
 
-                String val = normalizeCode(cell.toString());
-                if (!val.isBlank()) codes.add(val);
-            }
-        }
+        setStatus("Codes loaded. Ready to analyze.");
+    }
 
-        return codes;
+    private String normalizeCode(String s) {
+        return CbrFileParser.normalizeCode(s);
     }
 
     private void updateCodesStatusLabel() {
         if (codesStatusLabel == null) return;
 
-        if (validCodes.isEmpty()) {
+        if (codeTable.isEmpty()) {
             codesStatusLabel.setText("Codes: Not loaded (expects column source_value)");
         } else {
-            String name = (lastCodesFile == null) ? "" : " (" + lastCodesFile.getName() + ")";
-            codesStatusLabel.setText("Codes: Loaded " + validCodes.size() + name);
+            File source = codeTable.getSource();
+            String name = (source == null) ? "" : " (" + source.getName() + ")";
+            codesStatusLabel.setText("Codes: Loaded " + codeTable.size() + name);
         }
     }
 
@@ -406,16 +388,8 @@ public class HelloController {
 
     @FXML
     private void handleUpload() {
-        fileItems.clear();
-        tableView.getItems().clear();
-
-        resultsTextArea.clear();
-        exportButton.setDisable(true);
-
-        progressBar.progressProperty().unbind();
-        progressBar.setProgress(0);
-        progressLabel.setText("0 / 0");
-        setProgressDetail("—");
+        cancelCurrentJob();
+        resetUploadOutputs();
 
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Select ZIP or TXT Files");
@@ -426,343 +400,452 @@ public class HelloController {
         List<File> selectedFiles = fileChooser.showOpenMultipleDialog(new Stage());
         if (selectedFiles == null || selectedFiles.isEmpty()) return;
 
-        setStatus("Uploading and parsing...");
-
-        Task<Void> task = new Task<>() {
-            @Override
-            protected Void call() {
-                try {
-                    List<FileOrZipEntry> allTxtFiles = new ArrayList<>();
-                    for (File file : selectedFiles) {
-                        if (file.getName().toLowerCase().endsWith(".zip")) {
-                            allTxtFiles.addAll(listTxtInZip(file));
-                        } else if (file.getName().toLowerCase().endsWith(".txt")) {
-                            allTxtFiles.add(new FileOrZipEntry(file.getName(), file, null));
-                        }
-                    }
-
-                    int totalTxt = allTxtFiles.size();
-                    int processed = 0;
-
-                    Platform.runLater(() -> progressLabel.setText("Processing 0 of " + totalTxt));
-                    updateProgress(0, Math.max(totalTxt, 1));
+        uploadSources(selectedFiles);
+    }
 
-                    for (FileOrZipEntry entry : allTxtFiles) {
-                        if (entry.zipInputStream != null) processTxtFile(entry.name, entry.zipInputStream);
-                        else {
-                            try (FileInputStream fis = new FileInputStream(entry.file)) {
-                                processTxtFile(entry.name, fis);
-                            }
-                        }
+    @FXML
+    private void handleUploadFolder() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Select Folder (searched recursively for ZIP / TXT)");
 
-                        processed++;
-                        int current = processed;
-                        Platform.runLater(() -> {
-                            progressLabel.setText("Processing " + current + " of " + totalTxt);
-                            setProgressDetail(entry.name);
-                        });
-                        updateProgress(processed, Math.max(totalTxt, 1));
-                    }
+        File dir = chooser.showDialog(new Stage());
+        if (dir == null) return;
 
-                    Platform.runLater(() -> {
-                        setStatus("Upload complete. Ready to analyze.");
-                        setProgressDetail("Done");
-                        updateCounts(fileItems.size(), 0, 0);
-                    });
+        cancelCurrentJob();
+        resetUploadOutputs();
+        uploadSources(List.of(dir));
+    }
 
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    Platform.runLater(() -> {
-                        showError("Upload", "Failed to process files.", e.getMessage());
-                        setStatus("Upload failed.");
-                        setProgressDetail("Error");
-                    });
-                }
-                return null;
+    // Files and folders dropped onto the table are uploaded like picked ones
+    private void installDropTarget() {
+        tableView.setOnDragOver(event -> {
+            if (event.getGestureSource() == null && event.getDragboard().hasFiles()) {
+                event.acceptTransferModes(TransferMode.COPY);
             }
-        };
+            event.consume();
+        });
 
-        progressBar.progressProperty().bind(task.progressProperty());
-        new Thread(task, "upload-task").start();
-    }
-
-    private static class FileOrZipEntry {
-        String name;
-        File file;
-        InputStream zipInputStream;
-        FileOrZipEntry(String name, File file, InputStream zipInputStream) {
-            this.name = name;
-            this.file = file;
-            this.zipInputStream = zipInputStream;
-        }
-    }
-
-    private List<FileOrZipEntry> listTxtInZip(File zipFile) throws IOException {
-        List<FileOrZipEntry> entries = new ArrayList<>();
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zipFile))) {
-            ZipEntry entry;
-            while ((entry = zis.getNextEntry()) != null) {
-                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".txt")) {
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    byte[] buffer = new byte[4096];
-                    int read;
-                    while ((read = zis.read(buffer)) != -1) baos.write(buffer, 0, read);
-                    ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-                    entries.add(new FileOrZipEntry(entry.getName(), null, bais));
-                }
-                zis.closeEntry();
+        tableView.setOnDragDropped(event -> {
+            Dragboard db = event.getDragboard();
+            boolean accepted = db.hasFiles() && !db.getFiles().isEmpty();
+            if (accepted) {
+                List<File> dropped = new ArrayList<>(db.getFiles());
+                // start after the drop gesture completes so the source app is not kept waiting
+                Platform.runLater(() -> {
+                    cancelCurrentJob();
+                    resetUploadOutputs();
+                    uploadSources(dropped);
+                });
             }
-        }
-        return entries;
+            event.setDropCompleted(accepted);
+            event.consume();
+        });
     }
 
-    private static class SelectedNad {
-        final String qual; // ZZZ, HI, TB
-        final String code; // code
-        SelectedNad(String qual, String code) {
-            this.qual = qual;
-            this.code = code;
-        }
-    }
+    private void uploadSources(List<File> sources) {
+        SourceDiscovery.Filter filter = readSourceFilter();
+        if (filter == null) return;
+        if (!openSpillStoreIfBounded()) return;
 
-    private SelectedNad selectNadForUnh02(String unh02, Map<String, String> nadByQual) {
-        String u = (unh02 == null) ? "" : unh02.trim().toUpperCase(Locale.ROOT);
+        startUpload(sources, null, filter);
+    }
 
-        if ("IFTSTA".equals(u) || "IFTMBC".equals(u)) {
-            String z = nadByQual.get("ZZZ");
-            if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
+    /** Include / exclude globs from the UI, or null (after an error dialog) when one is invalid. */
+    private SourceDiscovery.Filter readSourceFilter() {
+        try {
+            return SourceDiscovery.Filter.of(includeGlobField.getText(), excludeGlobField.getText());
+        } catch (IllegalArgumentException e) {
+            showError("Upload", "Invalid include / exclude pattern.", e.getMessage());
             return null;
         }
+    }
 
-        if ("APERAK".equals(u)) {
-            String z = nadByQual.get("ZZZ");
-            if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
-
-            String hi = nadByQual.get("HI");
-            if (hi != null && !hi.isBlank()) return new SelectedNad("HI", hi);
-
-            String tb = nadByQual.get("TB");
-            if (tb != null && !tb.isBlank()) return new SelectedNad("TB", tb);
-
-            return null;
-        }
+    @FXML
+    private void handleCancelUpload() {
+        UploadJob job = currentJob;
+        if (job == null) return;
 
-        String z = nadByQual.get("ZZZ");
-        if (z != null && !z.isBlank()) return new SelectedNad("ZZZ", z);
-        return null;
+        job.cancel();
+        setStatus("Cancelling upload...");
     }
 
-    private void processTxtFile(String filename, InputStream inputStream) {
+    @FXML
+    private void handleResumeUpload() {
+        if (!UploadCheckpoint.exists(checkpointFile)) {
+            showInfo("Resume Upload", "Nothing to resume.", "No interrupted upload was found.");
+            refreshUploadButtons();
+            return;
+        }
 
-        int unhCount = 0;
-        int nadCount = 0;
+        UploadCheckpoint.Resumed resumed;
+        try {
+            resumed = UploadCheckpoint.read(checkpointFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            showError("Resume Upload", "Failed to read upload checkpoint.", e.getMessage());
+            return;
+        }
 
-        List<String> outputLines = new ArrayList<>();
-        Set<String> unh02Set = new LinkedHashSet<>();
+        File changed = resumed.changedSource();
+        if (changed != null) {
+            showError("Resume Upload", "Cannot resume upload.", (changed.exists()
+                    ? "Source file changed since the upload was interrupted: "
+                    : "Source file no longer exists: ") + changed + "\nStart a new upload instead.");
+            return;
+        }
 
-        String tid = filename.toLowerCase(Locale.ROOT).endsWith(".txt")
-                ? filename.substring(0, filename.length() - 4)
-                : filename;
+        SourceDiscovery.Filter filter = readSourceFilter();
+        if (filter == null) return;
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+        cancelCurrentJob();
+        resetUploadOutputs();
+        if (!openSpillStoreIfBounded()) return;
 
-            String line;
+        // the checkpointed rows are restored by the upload task itself, streamed into the spill store
+        startUpload(resumed.sources, resumed, filter);
+    }
 
-            boolean inUnh = false;
-            String currentUNH02 = "";
-            String currentBGM = "";
-            Map<String, String> currentNadByQual = new HashMap<>();
+    private void cancelCurrentJob() {
+        UploadJob job = currentJob;
+        if (job != null) job.cancel();
+        currentJob = null;
+        refreshUploadButtons();
+    }
 
-            while ((line = reader.readLine()) != null) {
-                String[] segments = line.split("'");
+    private void resetUploadOutputs() {
+        fileItems.clear();
+        closeSnapshot();
+        closeSpillStore();
 
-                for (String segment : segments) {
-                    segment = segment.trim();
-                    if (segment.isEmpty()) continue;
+        lastTidsWithErrors = 0;
+        lastTotalErrorTypes = 0;
+        cancelDuplicateIndex();
+        duplicates = DuplicateReferences.NONE;
 
-                    if (segment.startsWith("UNH+")) {
+        resultsTextArea.clear();
+        exportButton.setDisable(true);
 
-                        if (inUnh) {
-                            SelectedNad sel = selectNadForUnh02(currentUNH02, currentNadByQual);
-                            String nadPart = (sel == null) ? "NO_NAD" : (sel.qual + "=" + sel.code);
-                            String bgmPart = (currentBGM == null || currentBGM.isBlank()) ? "No BGM02" : currentBGM;
+        progressBar.progressProperty().unbind();
+        progressBar.setProgress(0);
+        progressLabel.setText("0 / 0");
+        setProgressDetail("—");
+    }
 
-                            outputLines.add(currentUNH02 + "|" + bgmPart + "/" + nadPart);
-                        }
+    /** In memory-bounded mode, opens a fresh spill file for the next upload. Returns false if that failed. */
+    private boolean openSpillStoreIfBounded() {
+        if (memoryBoundedCheckBox == null || !memoryBoundedCheckBox.isSelected()) return true;
+        try {
+            spillStore = new DetailSpillStore();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            showError("Upload", "Cannot create spill file for memory-bounded mode.", e.getMessage());
+            return false;
+        }
+    }
 
-                        inUnh = true;
-                        unhCount++;
+    private void closeSpillStore() {
+        if (spillStore == null) return;
+        closeQuietly(spillStore);
+        spillStore = null;
+    }
 
-                        currentBGM = "";
-                        currentNadByQual.clear();
+    private void refreshUploadButtons() {
+        boolean running = currentJob != null;
+        if (cancelUploadButton != null) cancelUploadButton.setDisable(!running);
+        if (resumeUploadButton != null) resumeUploadButton.setDisable(running || !UploadCheckpoint.exists(checkpointFile));
+    }
 
-                        String[] parts = segment.split("\\+");
-                        String msgType = "";
-                        if (parts.length > 2) {
-                            msgType = parts[2].trim();
-                            int colon = msgType.indexOf(':');
-                            if (colon >= 0) msgType = msgType.substring(0, colon).trim();
-                        }
-                        currentUNH02 = normalizeCode(msgType);
-                        if (!currentUNH02.isBlank()) unh02Set.add(currentUNH02);
+    /**
+     * Runs one upload job. Rows and progress from a job that is no longer current are dropped,
+     * and every completed entry is recorded in the checkpoint so an interrupted run can resume.
+     */
+    private void startUpload(List<File> sources, UploadCheckpoint.Resumed resumed, SourceDiscovery.Filter filter) {
+        UploadJob job = new UploadJob();
+        DetailSpillStore spill = spillStore;
+        currentJob = job;
+        refreshUploadButtons();
+
+        setStatus(resumed == null
+                ? "Uploading and parsing..."
+                : "Resuming upload: restoring completed entries...");
+
+        UiBatchPublisher<FileItem> publisher = new UiBatchPublisher<>(
+                UiBatchPublisher.DEFAULT_FRAME,
+                rows -> { if (job == currentJob) fileItems.addAll(rows); },
+                p -> { if (job == currentJob) showUploadProgress(p); }
+        );
 
-                        continue;
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                Map<File, ZipFile> openZips = new HashMap<>();
+                UploadCheckpoint checkpoint = null;
+                SourceDiscovery discovery = null;
+                try {
+                    if (resumed == null) {
+                        checkpoint = UploadCheckpoint.create(checkpointFile, sources, job);
+                    } else {
+                        // one record at a time, straight into the spill store and out through the publisher
+                        publisher.fileStarted("Restoring completed entries");
+                        resumed.restore((filename, tid, unhCount, details, envelope) -> {
+                            job.checkCancelled();
+                            publisher.publish(newFileItem(filename, tid, unhCount, details, envelope, spill));
+                        });
+                        checkpoint = UploadCheckpoint.reopen(checkpointFile, resumed, job);
+                        int restored = resumed.completedKeys().size();
+                        Platform.runLater(() -> {
+                            if (job == currentJob) setStatus("Resuming upload (" + restored + " entries already done)...");
+                        });
                     }
 
-                    if (!inUnh) continue;
+                    // discovery runs ahead on its own thread; totals grow as files are found
+                    discovery = new SourceDiscovery(sources, filter,
+                            resumed == null ? Set.of() : resumed.completedKeys(), job);
+                    discovery.start();
+
+                    SourceDiscovery.Entry entry;
+                    while ((entry = discovery.take()) != null) {
+                        job.checkCancelled();
+                        publisher.setTotals(discovery.getFilesFound(), discovery.getBytesFound());
+                        publisher.fileStarted(entry.name);
+
+                        FileItem item;
+                        try {
+                            item = parseEntry(entry, openZips, publisher, job, spill);
+                        } catch (IOException e) {
+                            // corrupt ZIP data or a file that went away: skipped and reported like
+                            // the unreadable sources discovery finds; not checkpointed, so Resume retries it
+                            job.skip(entry.key(), e);
+                            publisher.fileCompleted();
+                            continue;
+                        }
 
-                    if (segment.startsWith("BGM+")) {
-                        String[] parts = segment.split("\\+");
-                        if (parts.length > 2) currentBGM = parts[2].trim();
-                        continue;
+                        publisher.publish(item);
+                        checkpoint.append(entry.key(), entry.file, item);
+                        publisher.fileCompleted();
                     }
 
-                    if (segment.startsWith("NAD+")) {
-                        String[] parts = segment.split("\\+");
-                        if (parts.length >= 3) {
-                            String qual = normalizeCode(parts[1]); // ZZZ/HI/TB
-                            if (!("ZZZ".equals(qual) || "HI".equals(qual) || "TB".equals(qual))) continue;
-
-                            String nadValue = parts[2].trim();
-
-                            int underscore = nadValue.indexOf('_');
-                            if (underscore >= 0) nadValue = nadValue.substring(underscore + 1).trim();
+                    checkpoint.complete();
+                    publisher.setTotals(discovery.getFilesFound(), discovery.getBytesFound());
+                    publisher.finish();
+                    Platform.runLater(() -> {
+                        if (job != currentJob) return;
+                        currentJob = null;
+                        refreshUploadButtons();
+                        List<String> skipped = job.getSkipped();
+                        setStatus((spill == null
+                                ? "Upload complete. Ready to analyze."
+                                : "Upload complete. Ready to analyze. Details spilled to disk: "
+                                        + UiBatchPublisher.formatBytes(spill.size()) + ".")
+                                + (skipped.isEmpty() ? "" : " Skipped " + skipped.size() + " unreadable source(s)."));
+                        setProgressDetail("Done");
+                        updateCounts(fileItems.size(), 0, 0);
+                        reportSkipped(skipped);
+                    });
 
-                            int colon = nadValue.indexOf(':');
-                            if (colon >= 0) nadValue = nadValue.substring(0, colon).trim();
+                } catch (CancellationException e) {
+                    closeQuietly(checkpoint);
+                    publisher.finish();
+                    Platform.runLater(() -> {
+                        if (job != currentJob) return;
+                        currentJob = null;
+                        refreshUploadButtons();
+                        setStatus("Upload cancelled. Click Resume to continue from the last completed file.");
+                        setProgressDetail("Cancelled");
+                        updateCounts(fileItems.size(), 0, 0);
+                    });
 
-                            nadValue = normalizeCode(nadValue);
+                } catch (IOException | RuntimeException e) {
+                    // unchecked failures (spill writer, malformed input) end the job the same way,
+                    // so Cancel / Resume never stay stuck on a dead job
+                    e.printStackTrace();
+                    closeQuietly(checkpoint);
+                    publisher.finish();
+                    Platform.runLater(() -> {
+                        if (job != currentJob) return;
+                        currentJob = null;
+                        refreshUploadButtons();
+                        showError("Upload", "Failed to process files.",
+                                e.getMessage() != null ? e.getMessage() : e.toString());
+                        setStatus("Upload failed.");
+                        setProgressDetail("Error");
+                    });
 
-                            if (!nadValue.isBlank()) {
-                                currentNadByQual.put(qual, nadValue);
-                                nadCount++;
-                            }
-                        }
-                    }
+                } finally {
+                    if (discovery != null) discovery.close();
+                    for (ZipFile zip : openZips.values()) closeQuietly(zip);
                 }
+                return null;
             }
+        };
 
-            if (inUnh) {
-                SelectedNad sel = selectNadForUnh02(currentUNH02, currentNadByQual);
-                String nadPart = (sel == null) ? "NO_NAD" : (sel.qual + "=" + sel.code);
-                String bgmPart = (currentBGM == null || currentBGM.isBlank()) ? "No BGM02" : currentBGM;
+        publisher.start();
+        new Thread(task, "upload-task-" + job.getId()).start();
+    }
 
-                outputLines.add(currentUNH02 + "|" + bgmPart + "/" + nadPart);
+    /** Opens one discovered entry (plain TXT or ZIP entry) and parses it. */
+    private FileItem parseEntry(SourceDiscovery.Entry entry, Map<File, ZipFile> openZips,
+                                UiBatchPublisher<FileItem> publisher, UploadJob job, DetailSpillStore spill) throws IOException {
+        if (entry.zipEntryName == null) {
+            try (FileInputStream fis = new FileInputStream(entry.file)) {
+                return processTxtFile(entry.name, publisher.track(fis), job, spill);
             }
-
-        } catch (IOException e) {
-            e.printStackTrace();
         }
 
-        final String documentIDs = String.join("\n", outputLines);
-        final String finalFilename = filename;
-        final String finalTid = tid;
-
-        String unh02Summary = unh02Set.isEmpty() ? "" : " [" + String.join(", ", unh02Set) + "]";
-        final String finalUnhCount = "UNH: " + unhCount + unh02Summary + " / NAD: " + nadCount;
-
-        Platform.runLater(() ->
-                fileItems.add(new FileItem(finalFilename, finalTid, finalUnhCount, documentIDs))
-        );
+        ZipFile zip = openZips.get(entry.file);
+        if (zip == null) {
+            zip = new ZipFile(entry.file);
+            openZips.put(entry.file, zip);
+        }
+        ZipEntry zipEntry = zip.getEntry(entry.zipEntryName);
+        if (zipEntry == null) {
+            throw new IOException("Entry " + entry.zipEntryName + " no longer exists in " + entry.file);
+        }
+        try (InputStream in = zip.getInputStream(zipEntry)) {
+            return processTxtFile(entry.name, publisher.track(in), job, spill);
+        }
     }
 
-    // ============================================================
-    // Analyze
-    // ============================================================
+    private void reportSkipped(List<String> skipped) {
+        if (skipped.isEmpty()) return;
+        int shown = Math.min(skipped.size(), 20);
+        String list = String.join("\n", skipped.subList(0, shown));
+        if (skipped.size() > shown) list += "\n... and " + (skipped.size() - shown) + " more";
+        showInfo("Upload", skipped.size() + " source(s) could not be read and were skipped.", list);
+    }
 
-    private String formatReferenceLine(String documentID, String unh02) {
-        String nadRule;
-        if ("IFTSTA".equals(unh02) || "IFTMBC".equals(unh02)) {
-            nadRule = "NAD+ZZZ";
-        } else if ("APERAK".equals(unh02)) {
-            nadRule = "NAD+HI/TB/ZZZ";
-        } else {
-            nadRule = "NAD";
+    private static void closeQuietly(Closeable c) {
+        if (c == null) return;
+        try {
+            c.close();
+        } catch (IOException ignored) {
         }
-        return documentID + " - " + unh02 + " - " + nadRule;
     }
 
-    private String buildErrorSummaryForItem(FileItem item) {
-
-        List<String> missingRequiredNadLines = new ArrayList<>();
-        Map<String, List<String>> missingCodes = new LinkedHashMap<>();
+    private void showUploadProgress(UiBatchPublisher.Progress p) {
+        progressBar.setProgress(p.fraction());
 
-        String doc = item.getDocumentID();
-        if (doc == null || doc.isBlank()) return "";
-
-        for (String rawLine : doc.split("\\R")) {
-
-            if (rawLine == null || rawLine.isBlank()) continue;
-
-            String[] p1 = rawLine.split("\\|", 2);
-            if (p1.length < 2) continue;
-
-            String unh02 = normalizeCode(p1[0]);
-            String rest = p1[1];
+        String label = "Processing " + p.filesDone + " of " + p.totalFiles;
+        if (p.totalBytes > 0) {
+            label += " • " + UiBatchPublisher.formatBytes(p.bytesDone) + " / " + UiBatchPublisher.formatBytes(p.totalBytes);
+        }
+        progressLabel.setText(label);
 
-            String[] p2 = rest.split("/", 2);
-            if (p2.length < 2) continue;
+        String eta = UiBatchPublisher.formatEta(p.etaMillis);
+        setProgressDetail(eta.isEmpty() ? p.currentName : p.currentName + " • " + eta);
+    }
 
-            String bgm = p2[0].trim();
-            String nadPart = p2[1].trim();
+    private FileItem processTxtFile(String filename, InputStream inputStream, UploadJob job, DetailSpillStore spill) throws IOException {
+        CbrFileParser.Result r = CbrFileParser.parse(filename, inputStream, job);
+        return newFileItem(r.filename, r.tid, r.unhCount, r.details, r.envelope, spill);
+    }
 
-            if ("NO_NAD".equalsIgnoreCase(nadPart)) {
-                missingRequiredNadLines.add(formatReferenceLine(bgm, unh02));
-                continue;
-            }
+    /** Builds a row on the worker, spilling its details when a spill store is given. */
+    private static FileItem newFileItem(String filename, String tid, String unhCount, String details, String envelope,
+                                        DetailSpillStore spill) {
+        FileItem item = (spill != null)
+                ? new FileItem(filename, tid, unhCount, spill.append(details))
+                : new FileItem(filename, tid, unhCount, details);
+        item.setEnvelope(envelope);
+        // index terms are extracted here, on the worker, while the details are still at hand
+        item.setIndexTerms(ResultIndex.terms(details));
+        return item;
+    }
 
-            String[] qc = nadPart.split("=", 2);
-            if (qc.length < 2) continue;
+    // ============================================================
+    // Analyze
+    // ============================================================
 
-            String qual = normalizeCode(qc[0]);
-            String code = normalizeCode(qc[1]);
+    /** Per-message errors for one TID, in document order. */
+    private List<Finding> collectFindings(FileItem item) {
+        return FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codeTable, duplicates);
+    }
 
-            if (code.isBlank()) {
-                missingRequiredNadLines.add(formatReferenceLine(bgm, unh02));
-                continue;
+    /**
+     * Indexes every (UNH02, BGM reference) of the batch on a worker, since it reads every row's
+     * details, then hands the index to {@code then} on the FX thread. In memory-bounded mode a
+     * Bloom pre-pass keeps only repeated references in the index, at the cost of reading the
+     * details twice. A newer build, or a reset of the rows (new upload, opened session), cancels
+     * this one; nothing is handed over if the rows changed in the meantime.
+     */
+    private void buildDuplicateIndex(String title, Consumer<DuplicateReferences> then) {
+        cancelDuplicateIndex();
+
+        List<FileItem> rows = new ArrayList<>(fileItems);
+        long messages = 0;
+        for (FileItem item : rows) messages += CbrFileParser.messageCount(item.getUnhCount());
+        long expectedMessages = messages;
+        boolean bloom = memoryBoundedCheckBox != null && memoryBoundedCheckBox.isSelected();
+
+        Task<DuplicateReferences> task = new Task<>() {
+            @Override
+            protected DuplicateReferences call() throws IOException {
+                return DuplicateReferences.build(
+                        DuplicateReferences.of(rows, FileItem::getTid, item -> {
+                            if (isCancelled()) throw new CancellationException(); // superseded: stop reading details
+                            return item.getDocumentID();
+                        }),
+                        bloom, expectedMessages);
             }
-
-            if (!validCodes.contains(code)) {
-                missingCodes
-                        .computeIfAbsent(code, k -> new ArrayList<>())
-                        .add(formatReferenceLine(bgm, unh02) + " (NAD+" + qual + ")");
+        };
+        task.setOnSucceeded(e -> {
+            if (task != duplicateIndexTask) return;
+            duplicateIndexTask = null;
+            if (!fileItems.equals(rows)) {
+                setStatus(title + " skipped: the rows changed while references were indexed.");
+                return;
             }
-        }
-
-        StringBuilder sb = new StringBuilder();
+            then.accept(task.getValue());
+        });
+        task.setOnFailed(e -> {
+            if (task != duplicateIndexTask) return;
+            duplicateIndexTask = null;
+            Throwable ex = task.getException();
+            ex.printStackTrace();
+            showError(title, "Failed to read message details.", ex.getMessage());
+            setStatus(title + " failed.");
+        });
 
-        for (Map.Entry<String, List<String>> entry : missingCodes.entrySet()) {
-            sb.append("Error: Code does not exist in Customer Code table (")
-                    .append(entry.getKey())
-                    .append(")\n");
-            sb.append("Reference Number:\n");
-            for (String line : entry.getValue()) sb.append(line).append("\n");
-            sb.append("\n");
-        }
+        duplicateIndexTask = task;
+        setStatus("Indexing duplicate references...");
+        setProgressDetail("Indexing");
+        Thread thread = new Thread(task, "duplicate-index-task");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        if (!missingRequiredNadLines.isEmpty()) {
-            sb.append("Error: Missing required NAD\n");
-            sb.append("Reference Number:\n");
-            for (String line : missingRequiredNadLines) sb.append(line).append("\n");
-            sb.append("\n");
-        }
+    private void cancelDuplicateIndex() {
+        Task<DuplicateReferences> task = duplicateIndexTask;
+        duplicateIndexTask = null;
+        if (task != null) task.cancel();
+    }
 
-        return sb.toString().trim();
+    private String buildErrorSummaryForItem(FileItem item) {
+        return FindingsAnalyzer.summarize(collectFindings(item));
     }
 
     @FXML
     private void checkAspectInCollection() {
 
-        if (validCodes.isEmpty()) {
+        if (codeTable.isEmpty()) {
             showInfo("Analyze Errors", "Codes not loaded",
                     "Please click 'Load Codes (CSV/XLSX)' and select a file with column 'source_value'.");
             return;
         }
 
+        buildDuplicateIndex("Analysis", index -> {
+            duplicates = index;
+            analyzeRows();
+        });
+    }
+
+    private void analyzeRows() {
         resultsTextArea.clear();
         exportButton.setDisable(true);
 
         for (FileItem item : fileItems) item.setHasErrors(false);
+        resultIndex.clearFacet(ResultIndex.Facet.ERROR_TYPE);
 
         StringBuilder errorDetails = new StringBuilder();
         boolean errorsFound = false;
@@ -773,7 +856,13 @@ public class HelloController {
 
         for (FileItem item : fileItems) {
 
-            String itemSummary = buildErrorSummaryForItem(item);
+            List<Finding> findings = collectFindings(item);
+            Set<String> errorTypes = new LinkedHashSet<>();
+            for (Finding f : findings) errorTypes.add(f.getErrorType());
+            // kept on the terms as well, for rows indexed later and for saved sessions
+            item.getIndexTerms().errorTypes = Collections.unmodifiableSet(errorTypes);
+            if (item.getIndexRow() >= 0) resultIndex.addErrorTypes(item.getIndexRow(), errorTypes);
+            String itemSummary = FindingsAnalyzer.summarize(findings);
 
             if (!itemSummary.isBlank()) {
                 item.setHasErrors(true);
@@ -792,6 +881,8 @@ public class HelloController {
             }
         }
 
+        refreshFilterChoices();
+        applyResultFilter();
         tableView.refresh();
 
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -802,6 +893,7 @@ public class HelloController {
                 .append("Files Scanned: ").append(totalFiles).append("\n")
                 .append("TIDs With Errors: ").append(tidsWithErrors).append("\n")
                 .append("Total Error Types: ").append(totalErrorCount).append("\n")
+                .append("Duplicate References: ").append(duplicates.size()).append("\n")
                 .append("Timestamp: ").append(timestamp).append("\n")
                 .append("==============================\n\n");
 
@@ -818,18 +910,145 @@ public class HelloController {
             setStatus("Analysis complete: errors found.");
         }
 
+        lastTidsWithErrors = tidsWithErrors;
+        lastTotalErrorTypes = totalErrorCount;
         updateCounts(totalFiles, tidsWithErrors, totalErrorCount);
         setProgressDetail("Done");
     }
 
     // ============================================================
-    // Export to Excel (POI Cell + Hyperlink fully qualified)
+    // Result filter (bitset index; exports follow the visible rows)
+    // ============================================================
+
+    private static final String FILTER_ALL = "All";
+    private boolean updatingFilterChoices;
+
+    private void installResultFilter() {
+        // rows are indexed as they arrive; a removal renumbers the rows, so the index is rebuilt
+        fileItems.addListener((ListChangeListener<FileItem>) c -> {
+            boolean rebuild = false;
+            List<FileItem> added = new ArrayList<>();
+            while (c.next()) {
+                if (c.wasRemoved()) rebuild = true;
+                if (c.wasAdded()) added.addAll(c.getAddedSubList());
+            }
+            List<FileItem> toIndex = added;
+            if (rebuild) {
+                resultIndex.clear();
+                toIndex = fileItems;
+            }
+            for (FileItem item : toIndex) item.setIndexRow(resultIndex.add(item.getIndexTerms()));
+            if (visibleItems.getPredicate() != null) applyResultFilter();
+        });
+
+        if (filterCountLabel != null) {
+            filterCountLabel.textProperty().bind(Bindings.createStringBinding(
+                    () -> "Showing " + visibleItems.size() + " of " + fileItems.size(), visibleItems, fileItems));
+        }
+        if (searchField != null) searchField.textProperty().addListener((obs, o, n) -> applyResultFilter());
+
+        for (ComboBox<String> combo : filterCombos()) {
+            combo.getItems().setAll(FILTER_ALL);
+            combo.setValue(FILTER_ALL);
+            combo.setOnShowing(e -> refreshFilterChoices());
+            combo.valueProperty().addListener((obs, o, n) -> {
+                if (!updatingFilterChoices) applyResultFilter();
+            });
+        }
+    }
+
+    private List<ComboBox<String>> filterCombos() {
+        List<ComboBox<String>> combos = new ArrayList<>(3);
+        if (messageTypeFilter != null) combos.add(messageTypeFilter);
+        if (qualifierFilter != null) combos.add(qualifierFilter);
+        if (errorTypeFilter != null) combos.add(errorTypeFilter);
+        return combos;
+    }
+
+    /** Reloads the drop-down choices from the index, keeping the current selection when it still exists. */
+    private void refreshFilterChoices() {
+        updatingFilterChoices = true;
+        try {
+            setFilterChoices(messageTypeFilter, ResultIndex.Facet.MESSAGE_TYPE);
+            setFilterChoices(qualifierFilter, ResultIndex.Facet.QUALIFIER);
+            setFilterChoices(errorTypeFilter, ResultIndex.Facet.ERROR_TYPE);
+        } finally {
+            updatingFilterChoices = false;
+        }
+    }
+
+    private void setFilterChoices(ComboBox<String> combo, ResultIndex.Facet facet) {
+        if (combo == null) return;
+        String selected = combo.getValue();
+        List<String> choices = new ArrayList<>();
+        choices.add(FILTER_ALL);
+        choices.addAll(resultIndex.values(facet));
+        combo.getItems().setAll(choices);
+        combo.setValue(choices.contains(selected) ? selected : FILTER_ALL);
+    }
+
+    private static String selectedFilterValue(ComboBox<String> combo) {
+        if (combo == null) return null;
+        String v = combo.getValue();
+        return (v == null || FILTER_ALL.equals(v)) ? null : v;
+    }
+
+    /**
+     * Facet selections are resolved to one bitset up front; the search text matches a TID or file
+     * name substring, or a NAD code exactly (through the index), so details are never rescanned.
+     */
+    private void applyResultFilter() {
+        Map<ResultIndex.Facet, String> selected = new EnumMap<>(ResultIndex.Facet.class);
+        selected.put(ResultIndex.Facet.MESSAGE_TYPE, selectedFilterValue(messageTypeFilter));
+        selected.put(ResultIndex.Facet.QUALIFIER, selectedFilterValue(qualifierFilter));
+        selected.put(ResultIndex.Facet.ERROR_TYPE, selectedFilterValue(errorTypeFilter));
+        boolean facetActive = selected.values().stream().anyMatch(Objects::nonNull);
+
+        String query = (searchField == null || searchField.getText() == null) ? "" : searchField.getText().trim();
+
+        if (!facetActive && query.isEmpty()) {
+            visibleItems.setPredicate(null);
+            return;
+        }
+
+        BitSet facetRows = facetActive ? resultIndex.query(selected) : null;
+        BitSet codeRows = query.isEmpty() ? null : resultIndex.rows(ResultIndex.Facet.CODE, normalizeCode(query));
+        String needle = query.toLowerCase(Locale.ROOT);
+
+        visibleItems.setPredicate(item -> {
+            int row = item.getIndexRow();
+            if (facetRows != null && !facetRows.get(row)) return false;
+            if (codeRows == null) return true;
+            return codeRows.get(row)
+                    || containsIgnoreCase(item.getTid(), needle)
+                    || containsIgnoreCase(item.getFilename(), needle);
+        });
+    }
+
+    private static boolean containsIgnoreCase(String value, String lowerNeedle) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerNeedle);
+    }
+
+    @FXML
+    private void handleClearFilter() {
+        updatingFilterChoices = true;
+        try {
+            if (searchField != null) searchField.clear();
+            for (ComboBox<String> combo : filterCombos()) combo.setValue(FILTER_ALL);
+        } finally {
+            updatingFilterChoices = false;
+        }
+        applyResultFilter();
+    }
+
+    // ============================================================
+    // Export to Excel (POI code lives in ExcelSupport, loaded on first use)
     // ============================================================
 
     @FXML
     private void exportToExcel() {
-        if (fileItems.isEmpty()) {
-            showInfo("Export Excel", "No data to export!", "Upload files and run analysis first.");
+        if (visibleItems.isEmpty()) {
+            showInfo("Export Excel", "No data to export!", "Upload files and run analysis first (or clear the filter).");
             return;
         }
 
@@ -843,78 +1062,386 @@ public class HelloController {
         File file = fileChooser.showSaveDialog(new Stage());
         if (file == null) return;
 
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+        long started = System.nanoTime();
 
-            CreationHelper creationHelper = workbook.getCreationHelper();
-            Sheet sheet = workbook.createSheet("MSC Errors");
-            int rowNum = 0;
+        try {
+            ExcelSupport.exportReport(file, sortedItems, this::buildErrorSummaryForItem, TidLinks::storyUrl);
 
-            Row header = sheet.createRow(rowNum++);
-            header.createCell(0).setCellValue("Filename");
-            header.createCell(1).setCellValue("TID");
-            header.createCell(2).setCellValue("UNH/NAD Count (with UNH02)");
-            header.createCell(3).setCellValue("UNH02 | Reference Number / NADQUAL=CODE");
-            header.createCell(4).setCellValue("Error Summary");
+            showInfo("Export Excel", "Export successful", "Excel exported successfully with clickable TIDs!");
+            setStatus("Export complete (" + throughput(visibleItems.size(), file.length(), started) + ").");
 
-            CellStyle hlinkStyle = workbook.createCellStyle();
-            Font hlinkFont = workbook.createFont();
-            hlinkFont.setUnderline(Font.U_SINGLE);
-            hlinkFont.setColor(IndexedColors.BLUE.getIndex());
-            hlinkStyle.setFont(hlinkFont);
+        } catch (Exception e) {
+            e.printStackTrace();
+            showError("Export Excel", "Error exporting Excel", e.getMessage());
+            setStatus("Export failed.");
+        }
+    }
 
-            CellStyle wrapStyle = workbook.createCellStyle();
-            wrapStyle.setWrapText(true);
+    // ============================================================
+    // Session save / restore
+    // ============================================================
+
+    @FXML
+    private void handleSaveSession() {
+        if (fileItems.isEmpty()) {
+            showInfo("Save Session", "Nothing to save!", "Upload files first.");
+            return;
+        }
+        if (currentJob != null) {
+            showInfo("Save Session", "Upload in progress", "Wait for the upload to finish or cancel it first.");
+            return;
+        }
 
-            for (FileItem item : fileItems) {
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        String timestamp = LocalDateTime.now().format(dtf);
 
-                Row row = sheet.createRow(rowNum++);
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Session");
+        fileChooser.setInitialFileName("MSC_Session_" + timestamp + ".mscsession");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("MSC Session", SessionSnapshot.EXTENSION));
+        File file = fileChooser.showSaveDialog(new Stage());
+        if (file == null) return;
 
-                row.createCell(0).setCellValue(item.getFilename());
+        List<FileItem> items = new ArrayList<>(fileItems);
+        List<String> codes = new ArrayList<>(codeTable.getCodes());
+        File codesSource = codeTable.getSource();
+        String results = resultsTextArea.getText();
+        int tidsWithErrors = lastTidsWithErrors;
+        int totalErrorTypes = lastTotalErrorTypes;
+        Map<String, List<String>> dups = duplicates.asMap();
+        // the rows of an open session read their details from its file, so it is replaced in place
+        SessionSnapshot replacing = isOpenSnapshotFile(file) ? openSnapshot : null;
 
-                org.apache.poi.ss.usermodel.Cell tidCell = row.createCell(1); // POI Cell
-                tidCell.setCellValue(item.getTid());
+        setStatus("Saving session...");
 
-                String tidForUrl = sanitizeTidForUrl(item.getTid());
-                if (tidForUrl != null && !tidForUrl.isBlank()) {
-                    org.apache.poi.ss.usermodel.Hyperlink tidHyperlink =
-                            creationHelper.createHyperlink(org.apache.poi.common.usermodel.HyperlinkType.URL);
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                long started = System.nanoTime();
+                try {
+                    if (replacing != null) {
+                        replacing.saveOver(items, codes, codesSource, results,
+                                items.size(), tidsWithErrors, totalErrorTypes, dups);
+                    } else {
+                        SessionSnapshot.save(file.toPath(), items, codes, codesSource, results,
+                                items.size(), tidsWithErrors, totalErrorTypes, dups);
+                    }
 
-                    String url = "https://www.myvan.descartes.com/DocTrackingCore/Document/RetrieveTidStory?tid="
-                            + urlEncode(tidForUrl);
+                    long millis = (System.nanoTime() - started) / 1_000_000L;
+                    Platform.runLater(() -> setStatus("Session saved (" + items.size() + " files, "
+                            + UiBatchPublisher.formatBytes(file.length()) + " in " + millis + " ms)."));
 
-                    tidHyperlink.setAddress(url);
-                    tidCell.setHyperlink(tidHyperlink);
-                    tidCell.setCellStyle(hlinkStyle);
+                } catch (IOException | UncheckedIOException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> {
+                        showError("Save Session", "Failed to save session.", e.getMessage());
+                        setStatus("Save failed.");
+                    });
                 }
+                return null;
+            }
+        };
+
+        new Thread(task, "save-session-task").start();
+    }
+
+    @FXML
+    private void handleOpenSession() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Session");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("MSC Session", SessionSnapshot.EXTENSION));
+        File file = fileChooser.showOpenDialog(new Stage());
+        if (file == null) return;
+
+        cancelCurrentJob();
+        refreshUploadButtons();
+
+        long started = System.nanoTime();
+        SessionSnapshot snapshot;
+        try {
+            snapshot = SessionSnapshot.open(file.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            showError("Open Session", "Failed to open session.", e.getMessage());
+            return;
+        }
+
+        resetUploadOutputs();
+        openSnapshot = snapshot;
+
+        codeTable = new CodeTable(snapshot.getCodes(),
+                snapshot.getCodesSource().isBlank() ? null : new File(snapshot.getCodesSource()));
+        codesLoaded.set(!codeTable.isEmpty());
+        updateCodesStatusLabel();
+        prepareSuggestionsInBackground(codeTable);
+
+        fileItems.addAll(snapshot.getItems());
+
+        lastTidsWithErrors = snapshot.getTidsWithErrors();
+        lastTotalErrorTypes = snapshot.getTotalErrorTypes();
+        resultsTextArea.setText(snapshot.getResultsText());
+
+        long millis = (System.nanoTime() - started) / 1_000_000L;
+        updateCounts(fileItems.size(), lastTidsWithErrors, lastTotalErrorTypes);
+        // the saved results may be exported straight away, with the duplicate references they were computed with
+        duplicates = snapshot.getDuplicates();
+        exportButton.setDisable(lastTidsWithErrors == 0);
+        setStatus("Session restored from " + file.getName() + " in " + millis + " ms.");
+        setProgressDetail("Restored");
+    }
+
+    private void closeSnapshot() {
+        if (openSnapshot == null) return;
+        closeQuietly(openSnapshot);
+        openSnapshot = null;
+    }
+
+    private boolean isOpenSnapshotFile(File file) {
+        if (openSnapshot == null || !file.exists()) return false;
+        try {
+            return Files.isSameFile(openSnapshot.getFile(), file.toPath());
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // ============================================================
+    // Export findings (CSV / JSON Lines, optionally gzip)
+    // ============================================================
 
-                row.createCell(2).setCellValue(item.getUnhCount());
+    @FXML
+    private void exportFindings() {
+        if (visibleItems.isEmpty()) {
+            showInfo("Export Findings", "No data to export!", "Upload files and run analysis first (or clear the filter).");
+            return;
+        }
 
-                org.apache.poi.ss.usermodel.Cell docCell = row.createCell(3);
-                docCell.setCellValue(item.getDocumentID() == null ? "" : item.getDocumentID());
-                docCell.setCellStyle(wrapStyle);
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        String timestamp = LocalDateTime.now().format(dtf);
 
-                org.apache.poi.ss.usermodel.Cell summaryCell = row.createCell(4);
-                String summary = buildErrorSummaryForItem(item);
-                summaryCell.setCellValue(summary);
-                summaryCell.setCellStyle(wrapStyle);
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Findings");
+        fileChooser.setInitialFileName("MSC_Findings_" + timestamp + ".csv");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("CSV", "*.csv"),
+                new FileChooser.ExtensionFilter("CSV (gzip)", "*.csv.gz"),
+                new FileChooser.ExtensionFilter("JSON Lines", "*.jsonl"),
+                new FileChooser.ExtensionFilter("JSON Lines (gzip)", "*.jsonl.gz")
+        );
+        File file = fileChooser.showSaveDialog(new Stage());
+        if (file == null) return;
 
-                row.setHeight((short) -1);
+        List<FileItem> items = new ArrayList<>(sortedItems);
+        CodeTable codes = codeTable;
+        DuplicateReferences dups = duplicates;
+        setStatus("Exporting findings...");
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                long started = System.nanoTime();
+                long records;
+                try (FindingsExporter exporter = FindingsExporter.open(file.toPath(), TidLinks::storyUrl)) {
+                    for (FileItem item : items) {
+                        for (Finding f : FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, dups)) {
+                            exporter.write(f);
+                        }
+                    }
+                    records = exporter.getRecords();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> {
+                        showError("Export Findings", "Error exporting findings", e.getMessage());
+                        setStatus("Export failed.");
+                    });
+                    return null;
+                }
+
+                // measured once the exporter is closed, so gzip trailers and the last buffer are counted
+                String stats = throughput(records, file.length(), started);
+                Platform.runLater(() -> {
+                    showInfo("Export Findings", "Export successful",
+                            records + " findings written to " + file.getName() + "\n" + stats);
+                    setStatus("Export complete (" + stats + ").");
+                });
+                return null;
             }
+        };
 
-            for (int i = 0; i <= 4; i++) sheet.autoSizeColumn(i);
+        new Thread(task, "export-findings-task").start();
+    }
+
+    // ============================================================
+    // Sharded Excel export (one row per finding, split across sheets or files)
+    // ============================================================
 
-            try (FileOutputStream fos = new FileOutputStream(file)) {
-                workbook.write(fos);
+    @FXML
+    private void exportShardedExcel() {
+        if (visibleItems.isEmpty()) {
+            showInfo("Export Sharded Excel", "No data to export!", "Upload files and run analysis first (or clear the filter).");
+            return;
+        }
+
+        List<String> options = new ArrayList<>();
+        for (ShardedExport.Split split : ShardedExport.Split.values()) {
+            options.add("By " + split.label + " — sheets in one workbook");
+            options.add("By " + split.label + " — one workbook per shard");
+        }
+        ChoiceDialog<String> dialog = new ChoiceDialog<>(options.get(0), options);
+        dialog.setTitle("Export Sharded Excel");
+        dialog.setHeaderText("How should the findings be split?");
+        dialog.setContentText(String.format(Locale.ROOT,
+                "Up to %,d findings per shard; TID ranges hold %,d TIDs.",
+                ShardedExport.DEFAULT_ROWS_PER_SHARD, ShardedExport.DEFAULT_TIDS_PER_SHARD));
+        Optional<String> choice = dialog.showAndWait();
+        if (choice.isEmpty()) return;
+
+        int picked = options.indexOf(choice.get());
+        ShardedExport.Split split = ShardedExport.Split.values()[picked / 2];
+        ShardedExport.Layout layout = ShardedExport.Layout.values()[picked % 2];
+
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(layout == ShardedExport.Layout.FILES ? "Save Index Workbook" : "Save Excel File");
+        fileChooser.setInitialFileName("MSC_Findings_" + LocalDateTime.now().format(dtf) + ".xlsx");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Excel Files", "*.xlsx"));
+        File file = fileChooser.showSaveDialog(new Stage());
+        if (file == null) return;
+
+        List<FileItem> items = new ArrayList<>(sortedItems);
+        CodeTable codes = codeTable;
+        DuplicateReferences dups = duplicates;
+        setStatus("Exporting sharded Excel...");
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                long started = System.nanoTime();
+                try {
+                    ShardedExport.Result result = new ShardedExport(items,
+                            item -> FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, dups),
+                            TidLinks::storyUrl, split, layout,
+                            ShardedExport.DEFAULT_ROWS_PER_SHARD, ShardedExport.DEFAULT_TIDS_PER_SHARD,
+                            ShardedExport.defaultThreads())
+                            .export(file);
+
+                    long bytes = 0;
+                    for (File f : result.files) bytes += f.length();
+                    String stats = throughput(result.rows, bytes, started);
+                    String written = (layout == ShardedExport.Layout.FILES)
+                            ? result.shards.size() + " shard workbooks + index " + file.getName()
+                            : result.shards.size() + " shard sheets in " + file.getName();
+                    Platform.runLater(() -> {
+                        showInfo("Export Sharded Excel", "Export successful", written + "\n" + stats);
+                        setStatus("Export complete (" + stats + ").");
+                    });
+
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> {
+                        showError("Export Sharded Excel", "Error exporting Excel", e.getMessage());
+                        setStatus("Export failed.");
+                    });
+                }
+                return null;
             }
+        };
 
-            showInfo("Export Excel", "Export successful", "Excel exported successfully with clickable TIDs!");
-            setStatus("Export complete.");
+        new Thread(task, "export-sharded-task").start();
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            showError("Export Excel", "Error exporting Excel", e.getMessage());
-            setStatus("Export failed.");
+    // ============================================================
+    // Run-to-run diff
+    // ============================================================
+
+    private static final int DIFF_PREVIEW_LINES = 200;
+
+    /** Compares the current table against a saved run and writes new / fixed / unchanged errors to Excel. */
+    @FXML
+    private void compareWithPreviousRun() {
+        if (fileItems.isEmpty() || codeTable.isEmpty()) {
+            showInfo("Compare Runs", "Nothing to compare", "Upload files and load codes first.");
+            return;
         }
+
+        FileChooser openChooser = new FileChooser();
+        openChooser.setTitle("Select Previous Run");
+        openChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Saved runs", SessionSnapshot.EXTENSION,
+                        "*.csv", "*.csv.gz", "*.jsonl", "*.jsonl.gz", "*.ndjson"),
+                new FileChooser.ExtensionFilter("MSC Session", SessionSnapshot.EXTENSION),
+                new FileChooser.ExtensionFilter("Findings export", "*.csv", "*.csv.gz", "*.jsonl", "*.jsonl.gz", "*.ndjson")
+        );
+        File previous = openChooser.showOpenDialog(new Stage());
+        if (previous == null) return;
+
+        DateTimeFormatter dtf = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+        FileChooser saveChooser = new FileChooser();
+        saveChooser.setTitle("Save Comparison");
+        saveChooser.setInitialFileName("MSC_Diff_" + LocalDateTime.now().format(dtf) + ".xlsx");
+        saveChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Excel Files", "*.xlsx"));
+        File file = saveChooser.showSaveDialog(new Stage());
+        if (file == null) return;
+
+        List<FileItem> items = new ArrayList<>(fileItems);
+        CodeTable codes = codeTable;
+        setStatus("Comparing with " + previous.getName() + "...");
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() {
+                long started = System.nanoTime();
+                List<String> preview = new ArrayList<>();
+                try (ExcelSupport.DiffWorkbook workbook = ExcelSupport.openDiff(file, previous.getName(),
+                        "Current table (" + items.size() + " files)", TidLinks::storyUrl)) {
+
+                    FindingsDiff.Summary summary = FindingsDiff.compare(
+                            FindingsDiff.open(previous, codes),
+                            FindingsDiff.fromItems(items, codes),
+                            (status, f) -> {
+                                workbook.accept(status, f);
+                                if (status != FindingsDiff.Status.UNCHANGED && preview.size() < DIFF_PREVIEW_LINES) {
+                                    preview.add((status == FindingsDiff.Status.NEW ? "NEW    " : "FIXED  ") + f);
+                                }
+                            },
+                            FindingsDiff.DEFAULT_MAX_IN_MEMORY);
+                    workbook.finish(summary);
+
+                    long millis = (System.nanoTime() - started) / 1_000_000L;
+                    StringBuilder text = new StringBuilder("Compared with ").append(previous.getName()).append("\n")
+                            .append(summary).append("\n\n");
+                    for (String line : preview) text.append(line).append("\n");
+                    if (summary.newCount + summary.fixedCount > preview.size()) {
+                        text.append("... see ").append(file.getName()).append(" for the full list\n");
+                    }
+
+                    Platform.runLater(() -> {
+                        resultsTextArea.setText(text.toString().trim());
+                        setStatus("Comparison written to " + file.getName() + " (" + millis + " ms).");
+                    });
+
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                    Platform.runLater(() -> {
+                        showError("Compare Runs", "Error comparing runs", e.getMessage());
+                        setStatus("Comparison failed.");
+                    });
+                }
+                return null;
+            }
+        };
+
+        new Thread(task, "compare-runs-task").start();
+    }
+
+    /**
+     * Export summary in the same units for every format: rows written to the output and the
+     * bytes of the output files on disk (compressed size for gzip, zipped size for XLSX).
+     */
+    private static String throughput(long records, long bytes, long startedNanos) {
+        long millis = Math.max(1, (System.nanoTime() - startedNanos) / 1_000_000L);
+        double mbPerSec = (bytes / (1024.0 * 1024)) / (millis / 1000.0);
+        return String.format("%d rows, %s in %d ms, %.1f MB/s", records, UiBatchPublisher.formatBytes(bytes), millis, mbPerSec);
     }
 
     // ============================================================
@@ -937,6 +1464,36 @@ public class HelloController {
         a.showAndWait();
     }
 
+    // ============================================================
+    // Row highlighting
+    // ============================================================
+
+    /**
+     * The one hasErrors subscription of a table row. {@link #observe} moves it from the previous
+     * item to the next, and it is registered weakly, so a row dropped by the skin never stays
+     * attached to an item.
+     */
+    static final class ErrorStateSubscription {
+        private final ChangeListener<Boolean> listener;
+        private final WeakChangeListener<Boolean> weakListener;
+        private FileItem observed;
+
+        ErrorStateSubscription(java.util.function.Consumer<Boolean> onChange) {
+            this.listener = (obs, oldV, newV) -> onChange.accept(Boolean.TRUE.equals(newV));
+            this.weakListener = new WeakChangeListener<>(listener);
+        }
+
+        /** Follows {@code item} from now on (null: no item). */
+        void observe(FileItem item) {
+            if (observed == item) return;
+            if (observed != null) observed.hasErrorsProperty().removeListener(weakListener);
+            if (item != null) item.hasErrorsProperty().addListener(weakListener);
+            observed = item;
+        }
+
+        FileItem getObserved() { return observed; }
+    }
+
     // ============================================================
     // FileItem
     // ============================================================
@@ -945,29 +1502,65 @@ public class HelloController {
         private final javafx.beans.property.SimpleStringProperty filename;
         private final javafx.beans.property.SimpleStringProperty tid;
         private final javafx.beans.property.SimpleStringProperty unhCount;
-        private final javafx.beans.property.SimpleStringProperty documentID;
+
+        // Details are either resident, or loaded on demand (restored session). The property is
+        // only created once the row is actually shown, so unviewed rows never hold their details.
+        private javafx.beans.property.SimpleStringProperty documentID;
+        private volatile java.util.function.Supplier<String> documentIDLoader;
 
         private final BooleanProperty hasErrors = new SimpleBooleanProperty(false);
 
+        // Envelope problems found while parsing; rare and short, so always resident
+        private volatile String envelope = "";
+
         public FileItem(String filename, String tid, String unhCount, String documentID) {
+            this(filename, tid, unhCount, (java.util.function.Supplier<String>) null);
+            this.documentID = new javafx.beans.property.SimpleStringProperty(documentID);
+        }
+
+        public FileItem(String filename, String tid, String unhCount, java.util.function.Supplier<String> documentIDLoader) {
             this.filename = new javafx.beans.property.SimpleStringProperty(filename);
             this.tid = new javafx.beans.property.SimpleStringProperty(tid);
             this.unhCount = new javafx.beans.property.SimpleStringProperty(unhCount);
-            this.documentID = new javafx.beans.property.SimpleStringProperty(documentID);
+            this.documentIDLoader = documentIDLoader;
         }
 
         public String getFilename() { return filename.get(); }
         public String getTid() { return tid.get(); }
         public String getUnhCount() { return unhCount.get(); }
-        public String getDocumentID() { return documentID.get(); }
+        public String getDocumentID() { return documentID != null ? documentID.get() : documentIDLoader.get(); }
+        public boolean isDetailPaged() { return documentID == null && documentIDLoader instanceof DetailSpillStore.Ref; }
+
+        /** Envelope problem lines of this file (see {@link CbrFileParser}), "" when there are none. */
+        public String getEnvelope() { return envelope; }
+        void setEnvelope(String envelope) { this.envelope = envelope == null ? "" : envelope; }
+
+        /** Re-points lazily loaded details at a new backing file (session saved over itself). */
+        void setDetailsLoader(java.util.function.Supplier<String> loader) {
+            if (documentIDLoader != null) documentIDLoader = loader;
+        }
 
         public javafx.beans.property.SimpleStringProperty filenameProperty() { return filename; }
         public javafx.beans.property.SimpleStringProperty tidProperty() { return tid; }
         public javafx.beans.property.SimpleStringProperty unhCountProperty() { return unhCount; }
-        public javafx.beans.property.SimpleStringProperty documentIDProperty() { return documentID; }
+        public javafx.beans.property.SimpleStringProperty documentIDProperty() {
+            if (documentID == null) documentID = new javafx.beans.property.SimpleStringProperty(documentIDLoader.get());
+            return documentID;
+        }
 
         public BooleanProperty hasErrorsProperty() { return hasErrors; }
         public boolean hasErrors() { return hasErrors.get(); }
         public void setHasErrors(boolean value) { hasErrors.set(value); }
+
+        // Filter index: facet values captured while parsing and by the analysis (kept, so the index can
+        // be rebuilt and the terms saved with the session without rereading the details) and the row's bit
+        private volatile ResultIndex.Terms indexTerms = new ResultIndex.Terms();
+        private int indexRow = -1;
+
+        /** Facet values of this row; set by whoever creates it (parser, checkpoint resume, session restore). */
+        ResultIndex.Terms getIndexTerms() { return indexTerms; }
+        void setIndexTerms(ResultIndex.Terms terms) { indexTerms = terms; }
+        int getIndexRow() { return indexRow; }
+        void setIndexRow(int row) { indexRow = row; }
     }
 }
\ No newline at end of file
@@ -2,8 +2,19 @@ package com.example.demo;
 
 import javafx.application.Application;
 
+import java.util.Arrays;
+
 public class Launcher {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        // headless modes: --serve [--port N] [--codes file], --diff <previous run> <current run> [...]
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            ValidationService.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--diff".equals(args[0])) {
+            FindingsDiff.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         Application.launch(HelloApplication.class, args);
     }
 }
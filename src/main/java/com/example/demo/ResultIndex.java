@@ -0,0 +1,129 @@
+package com.example.demo;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Inverted index over the uploaded rows: one bitset per message type (UNH02), NAD qualifier,
+ * NAD code and error type, with bit {@code n} standing for the n-th row added.
+ *
+ * Message types, qualifiers and codes are extracted once per file while it is parsed (off the
+ * FX thread); error types are recorded by the analysis. Both are kept on the row's {@link Terms},
+ * so rows indexed later and restored sessions get every facet back. Filtering then only combines
+ * bitsets and never rescans the per-message details text.
+ */
+final class ResultIndex {
+
+    enum Facet { MESSAGE_TYPE, QUALIFIER, CODE, ERROR_TYPE }
+
+    /** Facet values of one file: parse-time ones, and the error types of the last analysis. */
+    static final class Terms {
+        final Set<String> messageTypes = new LinkedHashSet<>();
+        final Set<String> qualifiers = new LinkedHashSet<>();
+        final Set<String> codes = new LinkedHashSet<>();
+        volatile Set<String> errorTypes = Set.of(); // replaced as a whole, never modified
+    }
+
+    private final Map<Facet, Map<String, BitSet>> postings = new EnumMap<>(Facet.class);
+    private int size;
+
+    ResultIndex() {
+        for (Facet f : Facet.values()) postings.put(f, new HashMap<>());
+    }
+
+    /** Extracts the parse-time facets from a details text ({@code UNH02|BGM/QUAL=CODE} lines). */
+    static Terms terms(String details) {
+        Terms t = new Terms();
+        if (details == null || details.isEmpty()) return t;
+
+        int start = 0;
+        int len = details.length();
+        while (start < len) {
+            int end = details.indexOf('\n', start);
+            if (end < 0) end = len;
+            addLine(t, details, start, end);
+            start = end + 1;
+        }
+        return t;
+    }
+
+    private static void addLine(Terms t, String details, int start, int end) {
+        if (start >= end) return;
+
+        int bar = details.indexOf('|', start);
+        if (bar < 0 || bar >= end) return;
+        String unh02 = CbrFileParser.normalizeCode(details.substring(start, bar));
+        if (!unh02.isEmpty()) t.messageTypes.add(unh02);
+
+        // the reference may contain '/', the NAD part never does
+        int slash = details.lastIndexOf('/', end - 1);
+        if (slash <= bar) return;
+        int eq = details.indexOf('=', slash);
+        if (eq < 0 || eq >= end) return;
+
+        String qual = CbrFileParser.normalizeCode(details.substring(slash + 1, eq));
+        String code = CbrFileParser.normalizeCode(details.substring(eq + 1, end));
+        if (!qual.isEmpty()) t.qualifiers.add(qual);
+        if (!code.isEmpty()) t.codes.add(code);
+    }
+
+    /** Adds the next row and returns its position in the index. */
+    int add(Terms terms) {
+        int row = size++;
+        for (String v : terms.messageTypes) set(Facet.MESSAGE_TYPE, v, row);
+        for (String v : terms.qualifiers) set(Facet.QUALIFIER, v, row);
+        for (String v : terms.codes) set(Facet.CODE, v, row);
+        for (String v : terms.errorTypes) set(Facet.ERROR_TYPE, v, row);
+        return row;
+    }
+
+    void addErrorTypes(int row, Collection<String> errorTypes) {
+        for (String v : errorTypes) set(Facet.ERROR_TYPE, v, row);
+    }
+
+    void clearFacet(Facet facet) {
+        postings.get(facet).clear();
+    }
+
+    void clear() {
+        for (Map<String, BitSet> m : postings.values()) m.clear();
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Known values of a facet, sorted. */
+    SortedSet<String> values(Facet facet) {
+        return new TreeSet<>(postings.get(facet).keySet());
+    }
+
+    /** Rows having the given value of a facet (empty when none). */
+    BitSet rows(Facet facet, String value) {
+        BitSet b = postings.get(facet).get(value);
+        return b == null ? new BitSet() : b;
+    }
+
+    /** Rows matching every selected facet value; facets mapped to null or absent are not restricted. */
+    BitSet query(Map<Facet, String> selected) {
+        BitSet result = new BitSet(size);
+        result.set(0, size);
+        for (Map.Entry<Facet, String> e : selected.entrySet()) {
+            if (e.getValue() == null) continue;
+            result.and(rows(e.getKey(), e.getValue()));
+        }
+        return result;
+    }
+
+    private void set(Facet facet, String value, int row) {
+        postings.get(facet).computeIfAbsent(value, k -> new BitSet()).set(row);
+    }
+}
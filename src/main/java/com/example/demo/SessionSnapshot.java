@@ -0,0 +1,362 @@
+package com.example.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary save/restore of a whole session: rows, parsed message details, the loaded code
+ * table (and where it came from) and the last analysis results, including the duplicate
+ * references they were computed with.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   header   magic "MSCS", version, rowCount, offset of the rows section
+ *   details  raw UTF-8 message details of every row, back to back
+ *   rows     per row: filename, tid, unhCount, hasErrors, detail offset + length, envelope, then the
+ *            filter terms (message types, qualifiers, codes, error types), each as count + strings
+ *   codes    code table source path, code count, codes
+ *   results  results text, files / TIDs with errors / total error types
+ *   dups     duplicated reference count, then per reference: key, TID count, TIDs
+ * </pre>
+ * Details are written first so saving streams in one pass; the header is patched at the end.
+ * On restore only the row summaries and their filter terms are decoded, so the result filter can be
+ * rebuilt without reading any details, and the duplicate index comes back as saved instead of
+ * being recomputed from every row. Each row's details are materialized lazily, with a positional read from the details section, when the row is viewed, analyzed or exported.
+ * The file is not kept mapped: a mapping cannot be released on demand, and on Windows it would
+ * keep the file locked, so the session could never be saved over itself.
+ */
+public final class SessionSnapshot implements Closeable {
+
+    private static final int MAGIC = 0x4D534353; // "MSCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    public static final String EXTENSION = "*.mscsession";
+
+    private final Path file;
+    private volatile FileChannel channel;
+
+    private final List<HelloController.FileItem> items;
+    private final Set<String> codes;
+    private final String codesSource;
+    private final String resultsText;
+    private final int files;
+    private final int tidsWithErrors;
+    private final int totalErrorTypes;
+    private final DuplicateReferences duplicates;
+
+    private SessionSnapshot(Path file, FileChannel channel, List<HelloController.FileItem> items, Set<String> codes, String codesSource,
+                            String resultsText, int files, int tidsWithErrors, int totalErrorTypes,
+                            DuplicateReferences duplicates) {
+        this.file = file;
+        this.channel = channel;
+        this.items = items;
+        this.codes = codes;
+        this.codesSource = codesSource;
+        this.resultsText = resultsText;
+        this.files = files;
+        this.tidsWithErrors = tidsWithErrors;
+        this.totalErrorTypes = totalErrorTypes;
+        this.duplicates = duplicates;
+    }
+
+    /** The snapshot file backing the rows' details. */
+    public Path getFile() { return file; }
+    public List<HelloController.FileItem> getItems() { return items; }
+    public Set<String> getCodes() { return codes; }
+    /** Path of the CSV/XLSX the codes were loaded from, or "" when unknown. */
+    public String getCodesSource() { return codesSource; }
+    public String getResultsText() { return resultsText; }
+    public int getFiles() { return files; }
+    public int getTidsWithErrors() { return tidsWithErrors; }
+    public int getTotalErrorTypes() { return totalErrorTypes; }
+    /** Duplicate references the saved results were computed with. */
+    DuplicateReferences getDuplicates() { return duplicates; }
+
+    // ============================================================
+    // Save
+    // ============================================================
+
+    /**
+     * Writes the session to a temp file next to {@code target} and moves it into place,
+     * so a failed save never leaves a half-written snapshot behind. {@code duplicates} maps each
+     * duplicated {@code UNH02|reference} key to its TIDs.
+     */
+    public static void save(Path target, List<HelloController.FileItem> items,
+                            Collection<String> codes, File codesSource,
+                            String resultsText, int files, int tidsWithErrors, int totalErrorTypes,
+                            Map<String, List<String>> duplicates) throws IOException {
+
+        Path tmp = tempFile(target);
+        write(tmp, items, codes, codesSource, resultsText, files, tidsWithErrors, totalErrorTypes, duplicates,
+                new long[items.size()], new int[items.size()]);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Saves the session over this snapshot's own file. The new file is written next to it, the
+     * rows are moved onto the new file, and only then is the old one closed and replaced, so rows
+     * stay readable throughout and no open handle blocks the replace.
+     */
+    public void saveOver(List<HelloController.FileItem> items,
+                         Collection<String> codes, File codesSource,
+                         String resultsText, int files, int tidsWithErrors, int totalErrorTypes,
+                         Map<String, List<String>> duplicates) throws IOException {
+
+        Path tmp = tempFile(file);
+        long[] detailOffsets = new long[items.size()];
+        int[] detailLengths = new int[items.size()];
+        write(tmp, items, codes, codesSource, resultsText, files, tidsWithErrors, totalErrorTypes, duplicates,
+                detailOffsets, detailLengths);
+
+        FileChannel replacement = FileChannel.open(tmp, StandardOpenOption.READ);
+        try {
+            DetailsReader details = new DetailsReader(file, replacement);
+            for (int i = 0; i < items.size(); i++) {
+                long off = detailOffsets[i];
+                int len = detailLengths[i];
+                items.get(i).setDetailsLoader(() -> details.read(off, len));
+            }
+
+            FileChannel old = channel;
+            channel = replacement;
+            old.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            if (channel != replacement) replacement.close();
+            throw e;
+        }
+    }
+
+    private static Path tempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /** Writes a complete snapshot to {@code tmp}, recording where each row's details went. */
+    private static void write(Path tmp, List<HelloController.FileItem> items,
+                              Collection<String> codes, File codesSource,
+                              String resultsText, int files, int tidsWithErrors, int totalErrorTypes,
+                              Map<String, List<String>> duplicates, long[] detailOffsets, int[] detailLengths) throws IOException {
+
+        try (FileChannel ch = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 256 * 1024));
+            out.write(new byte[HEADER_SIZE]); // patched below
+
+            // details
+            long pos = HEADER_SIZE;
+            for (int i = 0; i < items.size(); i++) {
+                String doc = items.get(i).getDocumentID();
+                byte[] b = (doc == null ? "" : doc).getBytes(StandardCharsets.UTF_8);
+                out.write(b);
+                detailOffsets[i] = pos - HEADER_SIZE;
+                detailLengths[i] = b.length;
+                pos += b.length;
+            }
+
+            // rows
+            long rowsOffset = pos;
+            for (int i = 0; i < items.size(); i++) {
+                HelloController.FileItem item = items.get(i);
+                BinaryIO.writeString(out, item.getFilename());
+                BinaryIO.writeString(out, item.getTid());
+                BinaryIO.writeString(out, item.getUnhCount());
+                out.writeBoolean(item.hasErrors());
+                out.writeLong(detailOffsets[i]);
+                out.writeInt(detailLengths[i]);
+                BinaryIO.writeString(out, item.getEnvelope());
+                ResultIndex.Terms terms = item.getIndexTerms();
+                writeStrings(out, terms.messageTypes);
+                writeStrings(out, terms.qualifiers);
+                writeStrings(out, terms.codes);
+                writeStrings(out, terms.errorTypes);
+            }
+
+            // codes
+            BinaryIO.writeString(out, codesSource == null ? "" : codesSource.getAbsolutePath());
+            out.writeInt(codes.size());
+            for (String code : codes) BinaryIO.writeString(out, code);
+
+            // results
+            BinaryIO.writeString(out, resultsText);
+            out.writeInt(files);
+            out.writeInt(tidsWithErrors);
+            out.writeInt(totalErrorTypes);
+
+            // duplicates
+            out.writeInt(duplicates.size());
+            for (Map.Entry<String, List<String>> e : duplicates.entrySet()) {
+                BinaryIO.writeString(out, e.getKey());
+                writeStrings(out, e.getValue());
+            }
+            out.flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(items.size()).putLong(rowsOffset);
+            header.rewind();
+            ch.write(header, 0);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String v : values) BinaryIO.writeString(out, v);
+    }
+
+    private static void readStrings(DataInputStream in, Collection<String> into) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) into.add(BinaryIO.readString(in));
+    }
+
+    // ============================================================
+    // Restore
+    // ============================================================
+
+    /**
+     * Opens a snapshot. The returned object owns the file handle backing the lazily loaded
+     * details and must stay open while its rows are in use.
+     */
+    public static SessionSnapshot open(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && ch.read(header) >= 0) { /* fill */ }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a session snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version != VERSION) throw new IOException("Unsupported session snapshot version " + version);
+
+            int rowCount = header.getInt();
+            long rowsOffset = header.getLong();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(ch.position(rowsOffset)), 256 * 1024));
+
+            DetailsReader details = new DetailsReader(file, ch);
+            List<HelloController.FileItem> items = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                String filename = BinaryIO.readString(in);
+                String tid = BinaryIO.readString(in);
+                String unhCount = BinaryIO.readString(in);
+                boolean hasErrors = in.readBoolean();
+                long off = in.readLong();
+                int len = in.readInt();
+                String envelope = BinaryIO.readString(in);
+
+                HelloController.FileItem item = new HelloController.FileItem(
+                        filename, tid, unhCount, () -> details.read(off, len));
+                item.setHasErrors(hasErrors);
+                item.setEnvelope(envelope);
+                ResultIndex.Terms terms = new ResultIndex.Terms();
+                readStrings(in, terms.messageTypes);
+                readStrings(in, terms.qualifiers);
+                readStrings(in, terms.codes);
+                Set<String> errorTypes = new LinkedHashSet<>();
+                readStrings(in, errorTypes);
+                terms.errorTypes = Collections.unmodifiableSet(errorTypes);
+                item.setIndexTerms(terms);
+                items.add(item);
+            }
+
+            String codesSource = BinaryIO.readString(in);
+            int codeCount = in.readInt();
+            Set<String> codes = new HashSet<>(Math.max(16, codeCount * 4 / 3 + 1));
+            for (int i = 0; i < codeCount; i++) codes.add(BinaryIO.readString(in));
+
+            String resultsText = BinaryIO.readString(in);
+            int files = in.readInt();
+            int tidsWithErrors = in.readInt();
+            int totalErrorTypes = in.readInt();
+
+            int dupCount = in.readInt();
+            Map<String, List<String>> tidsByKey = new HashMap<>(Math.max(16, dupCount * 4 / 3 + 1));
+            for (int i = 0; i < dupCount; i++) {
+                String key = BinaryIO.readString(in);
+                List<String> tids = new ArrayList<>();
+                readStrings(in, tids);
+                tidsByKey.put(key, List.copyOf(tids));
+            }
+            DuplicateReferences duplicates = DuplicateReferences.restore(tidsByKey);
+
+            SessionSnapshot snapshot = new SessionSnapshot(file, ch, items, codes, codesSource,
+                    resultsText, files, tidsWithErrors, totalErrorTypes, duplicates);
+            return snapshot;
+
+        } catch (IOException | RuntimeException e) {
+            ch.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads one row's details with positional reads. Once the snapshot is closed, reads fail with
+     * an {@link UncheckedIOException} naming the session instead of a bare channel error.
+     */
+    private static final class DetailsReader {
+        private final Path file;
+        private final FileChannel channel;
+
+        DetailsReader(Path file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        String read(long offset, int length) {
+            if (length == 0) return "";
+            if (!channel.isOpen()) throw closed(null);
+
+            byte[] b = new byte[length];
+            ByteBuffer buf = ByteBuffer.wrap(b);
+            try {
+                long pos = HEADER_SIZE + offset;
+                while (buf.hasRemaining()) {
+                    int n = channel.read(buf, pos);
+                    if (n < 0) throw new IOException("Unexpected end of session snapshot");
+                    pos += n;
+                }
+            } catch (ClosedChannelException e) {
+                throw closed(e); // closed while this read was in flight
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new String(b, StandardCharsets.UTF_8);
+        }
+
+        private UncheckedIOException closed(ClosedChannelException cause) {
+            return new UncheckedIOException("Session " + file.getFileName() + " is closed; its details are no longer available",
+                    cause != null ? cause : new ClosedChannelException());
+        }
+    }
+}
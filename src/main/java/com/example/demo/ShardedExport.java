@@ -0,0 +1,289 @@
+package com.example.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntToLongFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Per-finding Excel export split into shards, for batches whose findings do not fit Excel's
+ * 1,048,576-row sheet limit. Shards are cut by size, by message type (UNH02) or by TID range,
+ * and written either as sheets of one workbook or as separate workbook files next to the target.
+ * The target always gets an "Index" sheet linking to every shard.
+ *
+ * Two passes over the rows: the first counts findings per row (in parallel) to plan the shards,
+ * the second re-collects and streams them, so findings are never all held at once. Separate
+ * files are written concurrently, one streaming workbook per worker; sheets of a single
+ * workbook are written one after another, as POI workbooks are not thread-safe.
+ */
+final class ShardedExport {
+
+    enum Split {
+        SIZE("size"), MESSAGE_TYPE("message type (UNH02)"), TID_RANGE("TID range");
+
+        final String label;
+
+        Split(String label) {
+            this.label = label;
+        }
+    }
+
+    enum Layout { SHEETS, FILES }
+
+    static final int MAX_ROWS_PER_SHARD = ExcelSupport.MAX_SHEET_ROWS - 1; // header row
+    static final int DEFAULT_ROWS_PER_SHARD = 500_000;
+    static final int DEFAULT_TIDS_PER_SHARD = 10_000;
+
+    /** One planned shard: the rows it takes findings from, restricted to one message type or not. */
+    static final class Shard {
+        final String label;
+        final String messageType; // null: all findings of the rows
+        final int[] items;
+        final long rows;
+        final String firstTid;
+        final String lastTid;
+        private String target; // sheet name or file name, set when written
+
+        Shard(String label, String messageType, int[] items, long rows, String firstTid, String lastTid) {
+            this.label = label;
+            this.messageType = messageType;
+            this.items = items;
+            this.rows = rows;
+            this.firstTid = firstTid;
+            this.lastTid = lastTid;
+        }
+
+        String getTarget() {
+            return target;
+        }
+    }
+
+    static final class Result {
+        final List<Shard> shards;
+        final List<File> files; // index workbook first
+        final long rows;
+
+        Result(List<Shard> shards, List<File> files, long rows) {
+            this.shards = shards;
+            this.files = files;
+            this.rows = rows;
+        }
+    }
+
+    private final List<HelloController.FileItem> items;
+    private final Function<HelloController.FileItem, List<Finding>> findings;
+    private final Function<String, String> tidUrl;
+    private final Split split;
+    private final Layout layout;
+    private final int rowsPerShard;
+    private final int tidsPerShard;
+    private final int threads;
+
+    ShardedExport(List<HelloController.FileItem> items,
+                  Function<HelloController.FileItem, List<Finding>> findings,
+                  Function<String, String> tidUrl,
+                  Split split, Layout layout, int rowsPerShard, int tidsPerShard, int threads) {
+        this.items = items;
+        this.findings = findings;
+        this.tidUrl = tidUrl;
+        this.split = split;
+        this.layout = layout;
+        this.rowsPerShard = Math.max(1, Math.min(rowsPerShard, MAX_ROWS_PER_SHARD));
+        this.tidsPerShard = Math.max(1, tidsPerShard);
+        this.threads = Math.max(1, threads);
+    }
+
+    static int defaultThreads() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Plans the shards and writes them; {@code target} becomes the index workbook. */
+    Result export(File target) throws IOException {
+        List<Shard> shards = plan();
+        List<File> files = new ArrayList<>();
+        files.add(target);
+
+        if (layout == Layout.SHEETS) {
+            writeSheets(target, shards);
+        } else {
+            files.addAll(writeFiles(target, shards));
+        }
+
+        long rows = 0;
+        for (Shard s : shards) rows += s.rows;
+        return new Result(shards, files, rows);
+    }
+
+    // ============================================================
+    // Planning
+    // ============================================================
+
+    List<Shard> plan() {
+        int n = items.size();
+        List<Shard> shards = new ArrayList<>();
+
+        if (split == Split.MESSAGE_TYPE) {
+            // finding counts per row and message type, counted in parallel
+            List<Map<String, Integer>> perType = IntStream.range(0, n).parallel().mapToObj(i -> {
+                Map<String, Integer> counts = new HashMap<>();
+                for (Finding f : findings.apply(items.get(i))) counts.merge(f.getUnh02(), 1, Integer::sum);
+                return counts;
+            }).toList();
+
+            Map<String, List<Integer>> rowsByType = new LinkedHashMap<>();
+            for (int i = 0; i < n; i++) {
+                for (String type : perType.get(i).keySet()) rowsByType.computeIfAbsent(type, k -> new ArrayList<>()).add(i);
+            }
+            List<String> types = new ArrayList<>(rowsByType.keySet());
+            types.sort(Comparator.naturalOrder());
+
+            for (String type : types) {
+                List<Integer> rows = rowsByType.get(type);
+                int[] order = rows.stream().mapToInt(Integer::intValue).toArray();
+                String label = type.isBlank() ? "(no UNH02)" : type;
+                pack(order, i -> perType.get(i).get(type), Integer.MAX_VALUE, type, k -> k == 1 ? label : label + " (" + k + ")", shards);
+            }
+            return shards;
+        }
+
+        long[] counts = new long[n];
+        IntStream.range(0, n).parallel().forEach(i -> counts[i] = findings.apply(items.get(i)).size());
+
+        int[] order = IntStream.range(0, n).filter(i -> counts[i] > 0).toArray();
+        if (split == Split.TID_RANGE) {
+            order = IntStream.of(order).boxed()
+                    .sorted(Comparator.comparing((Integer i) -> nullToEmpty(items.get(i).getTid())))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            pack(order, i -> counts[i], tidsPerShard, null, k -> String.format(Locale.ROOT, "TIDs %03d", k), shards);
+        } else {
+            pack(order, i -> counts[i], Integer.MAX_VALUE, null, k -> String.format(Locale.ROOT, "Part %03d", k), shards);
+        }
+        return shards;
+    }
+
+    /**
+     * Cuts {@code order} into consecutive shards of at most {@code rowsPerShard} findings and
+     * {@code maxTids} rows. A single row never spans shards; one larger than the limit gets a shard
+     * of its own (the writer continues it on a second sheet past Excel's limit).
+     */
+    private void pack(int[] order, IntToLongFunction counts, int maxTids, String messageType,
+                      Function<Integer, String> label, List<Shard> out) {
+        int start = 0;
+        int k = 0;
+        while (start < order.length) {
+            int end = start;
+            long rows = 0;
+            while (end < order.length && end - start < maxTids
+                    && (end == start || rows + counts.applyAsLong(order[end]) <= rowsPerShard)) {
+                rows += counts.applyAsLong(order[end]);
+                end++;
+            }
+
+            int[] part = Arrays.copyOfRange(order, start, end);
+            out.add(new Shard(label.apply(++k), messageType, part, rows,
+                    nullToEmpty(items.get(part[0]).getTid()), nullToEmpty(items.get(part[part.length - 1]).getTid())));
+            start = end;
+        }
+    }
+
+    private static String nullToEmpty(String s) {
+        return s == null ? "" : s;
+    }
+
+    // ============================================================
+    // Writing
+    // ============================================================
+
+    private void writeShard(Shard shard, ExcelSupport.FindingsWorkbook.FindingSheet sheet) {
+        for (int i : shard.items) {
+            for (Finding f : findings.apply(items.get(i))) {
+                if (shard.messageType == null || shard.messageType.equals(f.getUnh02())) sheet.write(f);
+            }
+        }
+    }
+
+    private void writeSheets(File target, List<Shard> shards) throws IOException {
+        try (ExcelSupport.FindingsWorkbook wb = ExcelSupport.openFindingsWorkbook(tidUrl, true)) {
+            for (Shard shard : shards) {
+                ExcelSupport.FindingsWorkbook.FindingSheet sheet = wb.startSheet(shard.label);
+                writeShard(shard, sheet);
+                shard.target = sheet.getSheetNames().get(0);
+            }
+            wb.writeIndex(shards, false);
+            wb.write(target);
+        }
+    }
+
+    private List<File> writeFiles(File target, List<Shard> shards) throws IOException {
+        String base = target.getName().replaceFirst("(?i)\\.xlsx$", "");
+        File dir = target.getAbsoluteFile().getParentFile();
+
+        List<File> files = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            Shard shard = shards.get(i);
+            String name = String.format(Locale.ROOT, "%s_%03d_%s.xlsx", base, i + 1,
+                    shard.label.replaceAll("[^A-Za-z0-9._-]+", "_"));
+            shard.target = name;
+            files.add(new File(dir, name));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sharded-export-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> pending = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                Shard shard = shards.get(i);
+                File file = files.get(i);
+                pending.add(pool.submit(() -> {
+                    try (ExcelSupport.FindingsWorkbook wb = ExcelSupport.openFindingsWorkbook(tidUrl, false)) {
+                        writeShard(shard, wb.startSheet(shard.label));
+                        wb.write(file);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : pending) await(f);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        try (ExcelSupport.FindingsWorkbook index = ExcelSupport.openFindingsWorkbook(tidUrl, true)) {
+            index.writeIndex(shards, true);
+            index.write(target);
+        }
+        return files;
+    }
+
+    private static void await(Future<?> f) throws IOException {
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof UncheckedIOException io) throw io.getCause();
+            if (cause instanceof RuntimeException re) throw re;
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.demo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds the TXT files to parse (plain files, directories walked recursively, and TXT entries
+ * inside ZIPs) on a producer thread and hands them over through a bounded queue, so parsing
+ * starts with the first file found instead of after the whole tree has been enumerated.
+ *
+ * Include / exclude globs ({@code ;}-separated, e.g. {@code TID*.txt; archive; *copy*}) are matched
+ * against the file name and against the path relative to the chosen folder (or inside the ZIP).
+ * Includes select TXT files; excludes also skip whole directories and ZIPs. Files picked one by
+ * one are always opened, but the filters still apply to the entries inside them.
+ *
+ * Unreadable files and folders and ZIPs that cannot be opened are skipped and recorded on the job
+ * ({@link UploadJob#skip}), so one bad source never aborts the rest of the upload.
+ */
+final class SourceDiscovery implements AutoCloseable {
+
+    /** One TXT file to parse: on disk, or an entry inside a ZIP. */
+    static final class Entry {
+        final String name;
+        final File file;          // the TXT file itself, or the ZIP that contains the entry
+        final String zipEntryName; // null for plain TXT files
+        final long size;          // uncompressed bytes, used for byte-weighted progress
+
+        Entry(String name, File file, String zipEntryName, long size) {
+            this.name = name;
+            this.file = file;
+            this.zipEntryName = zipEntryName;
+            this.size = size;
+        }
+
+        String key() {
+            return UploadCheckpoint.entryKey(file, zipEntryName);
+        }
+    }
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final Entry END = new Entry("", null, null, 0);
+
+    private final List<File> sources;
+    private final Filter filter;
+    private final Set<String> skipKeys;
+    private final UploadJob job;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong filesFound = new AtomicLong();
+    private final AtomicLong bytesFound = new AtomicLong();
+
+    private Thread producer;
+    private volatile boolean closed;
+
+    /**
+     * @param skipKeys entry keys that are already done (resumed uploads); they are neither
+     *                 queued nor counted
+     */
+    SourceDiscovery(List<File> sources, Filter filter, Set<String> skipKeys, UploadJob job) {
+        this.sources = sources;
+        this.filter = filter;
+        this.skipKeys = skipKeys;
+        this.job = job;
+    }
+
+    void start() {
+        producer = new Thread(this::discover, "upload-discovery-" + job.getId());
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    /** Next entry, blocking until one is found; null when discovery is complete. */
+    Entry take() {
+        Entry e;
+        try {
+            e = queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Upload interrupted");
+        }
+        return e != END ? e : null;
+    }
+
+    /** Files found so far (excluding skipped ones). */
+    long getFilesFound() { return filesFound.get(); }
+
+    /** Uncompressed bytes found so far (excluding skipped ones). */
+    long getBytesFound() { return bytesFound.get(); }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (producer != null) producer.interrupt();
+    }
+
+    // ============================================================
+    // Producer
+    // ============================================================
+
+    private void discover() {
+        try {
+            for (File source : sources) {
+                if (stopped()) break;
+                if (source.isDirectory()) {
+                    walk(source.toPath());
+                } else if (isZip(source.getName())) {
+                    offerZip(source);
+                } else if (isTxt(source.getName())) {
+                    offer(new Entry(source.getName(), source, null, source.length()));
+                }
+            }
+        } catch (InterruptedException e) {
+            return; // closed by the consumer
+        }
+
+        // also sent after a cancel, so a consumer blocked in take() wakes up
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void walk(Path root) throws InterruptedException {
+        try {
+            Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), Integer.MAX_VALUE, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (stopped()) return FileVisitResult.TERMINATE;
+                    if (!dir.equals(root) && filter.excludes(root.relativize(dir))) return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (stopped()) return FileVisitResult.TERMINATE;
+                    String name = file.getFileName().toString();
+                    boolean txt = isTxt(name);
+                    if (!attrs.isRegularFile() || (!txt && !isZip(name))) return FileVisitResult.CONTINUE;
+
+                    // includes select TXT files (on disk or inside ZIPs); excludes also drop whole ZIPs
+                    Path relative = root.relativize(file);
+                    if (txt ? !filter.accepts(relative) : filter.excludes(relative)) return FileVisitResult.CONTINUE;
+
+                    try {
+                        if (txt) offer(new Entry(name, file.toFile(), null, attrs.size()));
+                        else offerZip(file.toFile());
+                    } catch (InterruptedException e) {
+                        throw new Interrupted();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    job.skip(file, exc);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (Interrupted e) {
+            throw new InterruptedException();
+        } catch (IOException e) {
+            job.skip(root, e);
+        }
+    }
+
+    /**
+     * Queues the TXT entries of one ZIP, listed from its central directory; the parser streams
+     * them later. A ZIP that cannot be opened is skipped and recorded like an unreadable file.
+     */
+    private void offerZip(File zipFile) throws InterruptedException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            Enumeration<? extends ZipEntry> e = zip.entries();
+            while (e.hasMoreElements()) {
+                if (stopped()) return;
+                ZipEntry entry = e.nextElement();
+                if (entry.isDirectory() || !isTxt(entry.getName())) continue;
+                if (!filter.accepts(entryPath(entry.getName()))) continue;
+                offer(new Entry(entry.getName(), zipFile, entry.getName(), Math.max(entry.getSize(), 0)));
+            }
+        } catch (IOException e) {
+            job.skip(zipFile, e);
+        }
+    }
+
+    private void offer(Entry entry) throws InterruptedException {
+        if (skipKeys.contains(entry.key())) return;
+        filesFound.incrementAndGet();
+        bytesFound.addAndGet(entry.size);
+        queue.put(entry); // blocks while the parser is behind (bounded memory for huge trees)
+    }
+
+    private boolean stopped() {
+        return closed || job.isCancelled();
+    }
+
+    private static boolean isTxt(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".txt");
+    }
+
+    private static boolean isZip(String name) {
+        return name.toLowerCase(Locale.ROOT).endsWith(".zip");
+    }
+
+    private static Path entryPath(String entryName) {
+        try {
+            return Path.of(entryName);
+        } catch (InvalidPathException e) {
+            return Path.of(entryName.replaceAll("[<>:\"|?*\\x00-\\x1f]", "_"));
+        }
+    }
+
+    /** Signals an interrupted put from inside the file visitor, which may only throw IOException. */
+    private static final class Interrupted extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    // ============================================================
+    // Include / exclude globs
+    // ============================================================
+
+    static final class Filter {
+
+        static final Filter ALL = new Filter(List.of(), List.of());
+
+        private final List<PathMatcher> includes;
+        private final List<PathMatcher> excludes;
+
+        private Filter(List<PathMatcher> includes, List<PathMatcher> excludes) {
+            this.includes = includes;
+            this.excludes = excludes;
+        }
+
+        /** Parses {@code ;}-separated glob lists; blank means "everything" / "nothing". */
+        static Filter of(String include, String exclude) {
+            return new Filter(matchers(include), matchers(exclude));
+        }
+
+        boolean accepts(Path relative) {
+            if (excludes(relative)) return false;
+            if (includes.isEmpty()) return true;
+            for (PathMatcher m : includes) {
+                if (matches(m, relative)) return true;
+            }
+            return false;
+        }
+
+        boolean excludes(Path relative) {
+            for (PathMatcher m : excludes) {
+                if (matches(m, relative)) return true;
+            }
+            return false;
+        }
+
+        private static boolean matches(PathMatcher m, Path relative) {
+            Path name = relative.getFileName();
+            return m.matches(relative) || (name != null && m.matches(name));
+        }
+
+        private static List<PathMatcher> matchers(String globs) {
+            List<PathMatcher> out = new ArrayList<>();
+            if (globs == null) return out;
+            for (String g : globs.split(";")) {
+                String glob = g.trim();
+                if (!glob.isEmpty()) out.add(FileSystems.getDefault().getPathMatcher("glob:" + glob));
+            }
+            return out;
+        }
+    }
+}
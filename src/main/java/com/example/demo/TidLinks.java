@@ -0,0 +1,35 @@
+package com.example.demo;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * TID story links shown in the table and written to every export (Excel, CSV/JSONL, diff,
+ * service responses), plus the TID normalization that decides which files are the same TID.
+ */
+final class TidLinks {
+
+    static final String STORY_URL =
+            "https://www.myvan.descartes.com/DocTrackingCore/Document/RetrieveTidStory?tid=";
+
+    private TidLinks() {
+    }
+
+    /** TID as used in links: trimmed, with a trailing " - copy" (duplicated files) removed. */
+    static String sanitize(String tid) {
+        if (tid == null) return "";
+        String t = tid.trim();
+        if (t.toLowerCase(Locale.ROOT).endsWith(" - copy")) {
+            t = t.substring(0, t.length() - " - copy".length()).trim();
+        }
+        return t;
+    }
+
+    /** TID story link, or "" when the TID is blank. */
+    static String storyUrl(String tid) {
+        String tidForUrl = sanitize(tid);
+        if (tidForUrl.isBlank()) return "";
+        return STORY_URL + URLEncoder.encode(tidForUrl, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.demo;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collects rows and progress produced by a worker thread and hands them to the FX thread
+ * at a fixed frame rate, so thousands of small files cost one {@code addAll} per frame
+ * instead of one {@code Platform.runLater} per file.
+ */
+public class UiBatchPublisher<T> {
+
+    /** Snapshot of the worker's progress, delivered on the FX thread. */
+    public static final class Progress {
+        public final long filesDone;
+        public final long totalFiles;
+        public final long bytesDone;
+        public final long totalBytes;
+        public final String currentName;
+        public final long etaMillis; // -1 when unknown
+
+        Progress(long filesDone, long totalFiles, long bytesDone, long totalBytes, String currentName, long etaMillis) {
+            this.filesDone = filesDone;
+            this.totalFiles = totalFiles;
+            this.bytesDone = bytesDone;
+            this.totalBytes = totalBytes;
+            this.currentName = currentName;
+            this.etaMillis = etaMillis;
+        }
+
+        /** Byte-weighted fraction so one large file counts more than many small ones. */
+        public double fraction() {
+            if (totalBytes > 0) return Math.min(1.0, (double) bytesDone / totalBytes);
+            if (totalFiles > 0) return Math.min(1.0, (double) filesDone / totalFiles);
+            return 0;
+        }
+    }
+
+    public static final Duration DEFAULT_FRAME = Duration.millis(75);
+
+    private final Queue<T> pendingRows = new ConcurrentLinkedQueue<>();
+    private final AtomicLong filesDone = new AtomicLong();
+    private final AtomicLong bytesDone = new AtomicLong();
+    private volatile long totalFiles;
+    private volatile long totalBytes;
+    private volatile String currentName = "";
+
+    private final Consumer<List<T>> rowSink;
+    private final Consumer<Progress> progressSink;
+    private final Timeline timeline;
+
+    private long startNanos;
+
+    public UiBatchPublisher(Duration frame, Consumer<List<T>> rowSink, Consumer<Progress> progressSink) {
+        this.rowSink = rowSink;
+        this.progressSink = progressSink;
+        this.timeline = new Timeline(new KeyFrame(frame, e -> flush()));
+        this.timeline.setCycleCount(Animation.INDEFINITE);
+    }
+
+    // ============================================================
+    // Lifecycle (FX thread)
+    // ============================================================
+
+    public void start() {
+        startNanos = System.nanoTime();
+        timeline.play();
+    }
+
+    /** Stops the frame timer and delivers whatever is still buffered. Safe to call from any thread. */
+    public void finish() {
+        if (Platform.isFxApplicationThread()) {
+            timeline.stop();
+            flush();
+        } else {
+            Platform.runLater(this::finish);
+        }
+    }
+
+    private void flush() {
+        if (!pendingRows.isEmpty()) {
+            List<T> batch = new ArrayList<>();
+            T row;
+            while ((row = pendingRows.poll()) != null) batch.add(row);
+            rowSink.accept(batch);
+        }
+        progressSink.accept(snapshot());
+    }
+
+    private Progress snapshot() {
+        long files = filesDone.get();
+        long bytes = bytesDone.get();
+        long total = totalBytes;
+
+        long eta = -1;
+        if (bytes > 0 && total > bytes) {
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            eta = (long) (elapsedMillis * ((double) (total - bytes) / bytes));
+        }
+        return new Progress(files, totalFiles, bytes, total, currentName, eta);
+    }
+
+    // ============================================================
+    // Worker side (any thread)
+    // ============================================================
+
+    public void setTotals(long files, long bytes) {
+        this.totalFiles = files;
+        this.totalBytes = bytes;
+    }
+
+    public void publish(T row) {
+        if (row != null) pendingRows.add(row);
+    }
+
+    public void fileStarted(String name) {
+        this.currentName = name == null ? "" : name;
+    }
+
+    public void fileCompleted() {
+        filesDone.incrementAndGet();
+    }
+
+    /** Wraps a stream so every byte read is counted towards progress, including mid-file. */
+    public InputStream track(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytesDone.incrementAndGet();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buf, int off, int len) throws IOException {
+                int n = super.read(buf, off, len);
+                if (n > 0) bytesDone.addAndGet(n);
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                if (skipped > 0) bytesDone.addAndGet(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    // ============================================================
+    // Formatting helpers
+    // ============================================================
+
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024L * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        return String.format("%.2f GB", bytes / (1024.0 * 1024 * 1024));
+    }
+
+    public static String formatEta(long millis) {
+        if (millis < 0) return "";
+        long s = millis / 1000;
+        return String.format("ETA %d:%02d", s / 60, s % 60);
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.demo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only record of the entries an upload job has fully parsed.
+ *
+ * Layout: header (magic, version, selected source paths with their size and mtime) followed by
+ * one record per completed TXT entry (entry key, size and mtime of the TXT or ZIP it came from,
+ * the parsed row). Each record is flushed as soon as the entry finishes, so an interrupted
+ * multi-ZIP upload can be resumed from the last completed entry: rows already recorded are
+ * restored from the checkpoint and only the remaining entries are parsed again.
+ * Resuming reads the header first ({@link #read}); the records are then streamed one at a time
+ * ({@link Resumed#restore}), so their details never have to be on the heap all at once.
+ * A truncated trailing record (crash mid-write) is ignored and cut off on resume. Records whose
+ * file changed since they were written are dropped, so those entries are parsed again.
+ */
+public final class UploadCheckpoint implements Closeable {
+
+    private static final int MAGIC = 0x4D534355; // "MSCU"
+    private static final int VERSION = 3;
+    private static final byte RECORD = 1;
+
+    // Serializes writers of the shared checkpoint file, so a cancelled job cannot append after
+    // a newer job has replaced the file.
+    private static final Object LOCK = new Object();
+
+    /** Receives one restored row; details are handed over one record at a time. */
+    @FunctionalInterface
+    public interface RecordSink {
+        void accept(String filename, String tid, String unhCount, String details, String envelope) throws IOException;
+    }
+
+    /** An existing checkpoint: the selection it was made for, and (once restored) its completed entries. */
+    public static final class Resumed {
+        public final List<File> sources;
+        private final Path file;
+        private final long headerLength;
+        private final long[] sourceLengths;
+        private final long[] sourceModified;
+        private final Set<String> completed = new HashSet<>();
+        private long validLength = -1;
+
+        Resumed(Path file, List<File> sources, long[] sourceLengths, long[] sourceModified, long headerLength) {
+            this.file = file;
+            this.sources = sources;
+            this.sourceLengths = sourceLengths;
+            this.sourceModified = sourceModified;
+            this.headerLength = headerLength;
+        }
+
+        /**
+         * Streams the completed records to {@code sink}, in completion order, and remembers their
+         * entry keys. Records whose file changed since they were written are left out, so those
+         * entries are parsed again. A truncated trailing record is ignored.
+         */
+        public void restore(RecordSink sink) throws IOException {
+            try (InputStream raw = Files.newInputStream(file);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 256 * 1024))) {
+                in.skipNBytes(headerLength);
+                long pos = headerLength;
+
+                try {
+                    while (true) {
+                        int marker = in.read();
+                        if (marker < 0) break;
+                        if (marker != RECORD) break;
+                        long len = 1;
+
+                        byte[] key = BinaryIO.readBytes(in);
+                        byte[] path = BinaryIO.readBytes(in);
+                        long fileLength = in.readLong();
+                        long fileModified = in.readLong();
+                        len += 4 + key.length + 4 + path.length + 8 + 8;
+
+                        String[] fields = new String[5];
+                        for (int i = 0; i < fields.length; i++) {
+                            byte[] b = BinaryIO.readBytes(in);
+                            len += 4 + b.length;
+                            fields[i] = new String(b, StandardCharsets.UTF_8);
+                        }
+                        pos += len;
+
+                        File source = new File(new String(path, StandardCharsets.UTF_8));
+                        if (source.length() != fileLength || source.lastModified() != fileModified) {
+                            continue; // changed since it was parsed: parse it again
+                        }
+                        completed.add(new String(key, StandardCharsets.UTF_8));
+                        sink.accept(fields[0], fields[1], fields[2], fields[3], fields[4]);
+                    }
+                } catch (EOFException truncated) {
+                    // trailing record was cut off mid-write; everything before pos is intact
+                }
+                validLength = pos;
+            }
+        }
+
+        /** Entry keys restored by {@link #restore}; these are not parsed again. */
+        public Set<String> completedKeys() {
+            return Collections.unmodifiableSet(completed);
+        }
+
+        /**
+         * First selected source that is gone, or whose size or mtime differs from when the upload
+         * started; null when all are unchanged. Folders are only checked for existence, their
+         * files are checked per record.
+         */
+        public File changedSource() {
+            for (int i = 0; i < sources.size(); i++) {
+                File f = sources.get(i);
+                if (!f.exists()) return f;
+                if (f.isFile() && (f.length() != sourceLengths[i] || f.lastModified() != sourceModified[i])) return f;
+            }
+            return null;
+        }
+    }
+
+    private final Path file;
+    private final UploadJob owner;
+    private final DataOutputStream out;
+
+    private UploadCheckpoint(Path file, UploadJob owner, DataOutputStream out) {
+        this.file = file;
+        this.owner = owner;
+        this.out = out;
+    }
+
+    public static Path defaultFile() {
+        return Path.of(System.getProperty("user.home"), ".msc-cbr-error-detector", "upload.checkpoint");
+    }
+
+    /** Key identifying one TXT entry across runs: the source path, plus the entry name for ZIPs. */
+    public static String entryKey(File source, String entryName) {
+        String path = source.getAbsolutePath();
+        return entryName == null ? path : path + "!" + entryName;
+    }
+
+    // ============================================================
+    // Writing
+    // ============================================================
+
+    /** Starts a fresh checkpoint for the given selection, replacing any previous one. */
+    public static UploadCheckpoint create(Path file, List<File> sources, UploadJob owner) throws IOException {
+        synchronized (LOCK) {
+            Files.createDirectories(file.getParent());
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), false)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.size());
+            for (File f : sources) {
+                BinaryIO.writeString(out, f.getAbsolutePath());
+                out.writeLong(f.isFile() ? f.length() : 0);
+                out.writeLong(f.lastModified());
+            }
+            out.flush();
+            return new UploadCheckpoint(file, owner, out);
+        }
+    }
+
+    /**
+     * Re-opens a restored checkpoint for appending after dropping any partially written trailing
+     * record.
+     */
+    public static UploadCheckpoint reopen(Path file, Resumed resumed, UploadJob owner) throws IOException {
+        if (resumed.validLength < 0) throw new IllegalStateException("Checkpoint not restored yet");
+        synchronized (LOCK) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(resumed.validLength);
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)));
+            return new UploadCheckpoint(file, owner, out);
+        }
+    }
+
+    /** Records a completed entry; {@code file} is the TXT file or the ZIP the entry was read from. */
+    public void append(String entryKey, File file, HelloController.FileItem item) throws IOException {
+        synchronized (LOCK) {
+            if (owner.isCancelled()) return;
+            out.writeByte(RECORD);
+            BinaryIO.writeString(out, entryKey);
+            BinaryIO.writeString(out, file.getAbsolutePath());
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            BinaryIO.writeString(out, item.getFilename());
+            BinaryIO.writeString(out, item.getTid());
+            BinaryIO.writeString(out, item.getUnhCount());
+            BinaryIO.writeString(out, item.getDocumentID());
+            BinaryIO.writeString(out, item.getEnvelope());
+            out.flush();
+        }
+    }
+
+    /** Closes the checkpoint and removes it; called when the job ran to completion. */
+    public void complete() throws IOException {
+        synchronized (LOCK) {
+            out.close();
+            if (!owner.isCancelled()) Files.deleteIfExists(file);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (LOCK) {
+            out.close();
+        }
+    }
+
+    // ============================================================
+    // Reading
+    // ============================================================
+
+    public static boolean exists(Path file) {
+        return Files.isRegularFile(file);
+    }
+
+    /** Reads the header of a checkpoint; the records are streamed later by {@link Resumed#restore}. */
+    public static Resumed read(Path file) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw))) {
+
+            if (in.readInt() != MAGIC) throw new IOException("Not an upload checkpoint: " + file);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported checkpoint version " + version);
+
+            long pos = 12;
+            int sourceCount = in.readInt();
+            List<File> sources = new ArrayList<>(sourceCount);
+            long[] sourceLengths = new long[sourceCount];
+            long[] sourceModified = new long[sourceCount];
+            for (int i = 0; i < sourceCount; i++) {
+                byte[] b = BinaryIO.readBytes(in);
+                sources.add(new File(new String(b, StandardCharsets.UTF_8)));
+                sourceLengths[i] = in.readLong();
+                sourceModified[i] = in.readLong();
+                pos += 4 + b.length + 8 + 8;
+            }
+            return new Resumed(file, sources, sourceLengths, sourceModified, pos);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.demo;
+
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identity + cancellation flag for one upload run.
+ * Workers poll {@link #checkCancelled()} between lines so a cancel stops parsing mid-file,
+ * and the UI compares job identity to drop results that arrive from a superseded run.
+ * Sources that cannot be read are recorded with {@link #skip} and reported when the run ends.
+ */
+public final class UploadJob {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    private final long id = NEXT_ID.getAndIncrement();
+    private volatile boolean cancelled;
+    private final List<String> skipped = new CopyOnWriteArrayList<>();
+
+    public long getId() { return id; }
+
+    public void cancel() { cancelled = true; }
+
+    public boolean isCancelled() { return cancelled; }
+
+    public void checkCancelled() {
+        if (cancelled) throw new CancellationException("Upload job #" + id + " cancelled");
+    }
+
+    /** Records a file, folder or ZIP that could not be read; the run continues without it. */
+    public void skip(Object source, Exception cause) {
+        String reason;
+        if (cause instanceof NoSuchFileException) reason = "not found";
+        else if (cause instanceof AccessDeniedException) reason = "access denied";
+        else reason = cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+        skipped.add(source + ": " + reason);
+    }
+
+    /** Skipped sources with the reason, in the order they were found. */
+    public List<String> getSkipped() { return List.copyOf(skipped); }
+
+    @Override
+    public String toString() {
+        return "UploadJob#" + id + (cancelled ? " (cancelled)" : "");
+    }
+}
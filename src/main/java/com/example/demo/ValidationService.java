@@ -0,0 +1,320 @@
+package com.example.demo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Headless service mode: NAD/code validation over a local HTTP endpoint.
+ *
+ * Endpoints (bound to the loopback interface only):
+ * <ul>
+ *   <li>{@code POST /validate[?name=file.txt]} - body is a CBR TXT file or a ZIP of TXT files,
+ *       streamed straight into the parser; responds with JSON findings per file.</li>
+ *   <li>{@code POST /codes} - body is a CSV or XLSX code table; replaces the shared table atomically.</li>
+ *   <li>{@code GET /health} - status and number of loaded codes.</li>
+ * </ul>
+ *
+ * Every exchange runs on its own virtual thread. Requests read the code table once, so a
+ * concurrent {@code /codes} upload never changes the table halfway through a validation.
+ */
+public final class ValidationService {
+
+    public static final int DEFAULT_PORT = 8085;
+
+    static {
+        // Without TCP_NODELAY small JSON responses stall on delayed ACKs (~40 ms per request).
+        // Read once when the JDK server is first used, so it has to be set before HttpServer.create.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final AtomicReference<CodeTable> codes = new AtomicReference<>(CodeTable.EMPTY);
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    public ValidationService(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/validate", this::handleValidate);
+        server.createContext("/codes", this::handleCodes);
+        server.createContext("/health", this::handleHealth);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.close();
+    }
+
+    /** Bound port (useful when created with port 0). */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void setCodes(CodeTable table) {
+        codes.set(table == null ? CodeTable.EMPTY : table);
+    }
+
+    public CodeTable getCodes() {
+        return codes.get();
+    }
+
+    // ============================================================
+    // Entry point: --serve [--port N] [--codes file]
+    // ============================================================
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        File codesFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--port" -> port = Integer.parseInt(optionValue(args, ++i));
+                    case "--codes" -> codesFile = new File(optionValue(args, ++i));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            exitWithUsage("--port needs a whole number");
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e.getMessage());
+        }
+        if (port < 0 || port > 65535) exitWithUsage("--port must be between 0 and 65535");
+
+        ValidationService service = new ValidationService(port);
+        if (codesFile != null) {
+            service.setCodes(CodeTable.load(codesFile));
+            System.out.println("Loaded " + service.getCodes().size() + " codes from " + codesFile.getName());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop));
+        service.start();
+        System.out.println("Validation service listening on http://127.0.0.1:" + service.getPort());
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private static void exitWithUsage(String problem) {
+        if (problem != null) System.err.println(problem);
+        System.err.println("Usage: --serve [--port " + DEFAULT_PORT + "] [--codes file]");
+        System.exit(2);
+    }
+
+    // ============================================================
+    // Handlers
+    // ============================================================
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use GET");
+                return;
+            }
+            CodeTable table = codes.get();
+            StringBuilder sb = new StringBuilder("{\"status\":\"ok\",\"codes\":").append(table.size());
+            if (table.getSource() != null) {
+                sb.append(",\"codes_source\":");
+                FindingsExporter.appendJsonString(sb, table.getSource().getName());
+            }
+            sendJson(exchange, 200, sb.append('}').toString());
+        }
+    }
+
+    private void handleCodes(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            if (!"POST".equals(method) && !"PUT".equals(method)) {
+                sendError(exchange, 405, "Use POST or PUT");
+                return;
+            }
+
+            CodeTable table;
+            try (InputStream body = new BufferedInputStream(exchange.getRequestBody())) {
+                table = isZip(body) ? loadXlsx(body) : new CodeTable(CodeTable.readCsv(body), null);
+            } catch (Exception e) {
+                sendError(exchange, 400, "Failed to read code table: " + e.getMessage());
+                return;
+            }
+
+            if (table.isEmpty()) {
+                sendError(exchange, 400, "No codes found. Expected a column named 'source_value' (or 'source value').");
+                return;
+            }
+
+            // the suggestion index is built before the swap, so validations never wait for it
+            codes.set(table.prepareSuggestions());
+            sendJson(exchange, 200, "{\"codes\":" + table.size() + "}");
+        }
+    }
+
+    private void handleValidate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Use POST");
+                return;
+            }
+
+            CodeTable table = codes.get();
+            if (table.isEmpty()) {
+                sendError(exchange, 409, "Codes not loaded. POST a code table to /codes first.");
+                return;
+            }
+
+            String name = queryParam(exchange, "name");
+            if (name == null || name.isBlank()) name = "upload.txt";
+
+            // all files of the upload are parsed first: duplicate references are checked across them
+            List<CbrFileParser.Result> parsed = new ArrayList<>();
+            try (InputStream body = new BufferedInputStream(exchange.getRequestBody(), 64 * 1024)) {
+                if (isZip(body)) {
+                    ZipInputStream zis = new ZipInputStream(body);
+                    ZipEntry entry;
+                    while ((entry = zis.getNextEntry()) != null) {
+                        if (entry.isDirectory() || !entry.getName().toLowerCase(Locale.ROOT).endsWith(".txt")) continue;
+                        String entryName = new File(entry.getName()).getName();
+                        parsed.add(CbrFileParser.parse(entryName, new NonClosingInputStream(zis), null));
+                    }
+                } else {
+                    parsed.add(CbrFileParser.parse(name, body, null));
+                }
+            } catch (IOException e) {
+                sendError(exchange, 400, "Failed to read upload: " + e.getMessage());
+                return;
+            }
+
+            DuplicateReferences duplicates = parsed.size() < 2
+                    ? DuplicateReferences.NONE
+                    : DuplicateReferences.build(DuplicateReferences.of(parsed, r -> r.tid, r -> r.details), false, 0);
+
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("{\"files\":[");
+            int files = 0;
+            int total = 0;
+            for (CbrFileParser.Result r : parsed) {
+                if (files++ > 0) sb.append(',');
+                total += appendFile(sb, r, table, duplicates);
+            }
+
+            sb.append("],\"file_count\":").append(files)
+                    .append(",\"finding_count\":").append(total)
+                    .append(",\"codes\":").append(table.size())
+                    .append('}');
+            sendJson(exchange, 200, sb.toString());
+        }
+    }
+
+    /** Appends the JSON object of one parsed TXT file; returns the number of findings. */
+    private static int appendFile(StringBuilder sb, CbrFileParser.Result r, CodeTable table, DuplicateReferences duplicates) {
+        List<Finding> findings = FindingsAnalyzer.collect(r.tid, r.filename, r.details, r.envelope, table, duplicates);
+
+        sb.append("{\"filename\":");
+        FindingsExporter.appendJsonString(sb, r.filename);
+        sb.append(",\"tid\":");
+        FindingsExporter.appendJsonString(sb, r.tid);
+        sb.append(",\"summary\":");
+        FindingsExporter.appendJsonString(sb, r.unhCount);
+        sb.append(",\"findings\":[");
+        for (int i = 0; i < findings.size(); i++) {
+            if (i > 0) sb.append(',');
+            Finding f = findings.get(i);
+            FindingsExporter.appendJson(sb, f, TidLinks.storyUrl(f.getTid()));
+        }
+        sb.append("]}");
+        return findings.size();
+    }
+
+    // ============================================================
+    // Helpers
+    // ============================================================
+
+    /** Peeks for the ZIP local header magic ("PK"); XLSX files are ZIPs as well. */
+    private static boolean isZip(InputStream in) throws IOException {
+        in.mark(4);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        return b0 == 'P' && b1 == 'K';
+    }
+
+    /** POI needs a file for XLSX, so the body is spooled to a temp file first. */
+    private static CodeTable loadXlsx(InputStream in) throws IOException {
+        Path tmp = Files.createTempFile("msc-codes-", ".xlsx");
+        try {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            return new CodeTable(CodeTable.load(tmp.toFile()).getCodes(), null);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String key) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return null;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            if (k.equals(key)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        StringBuilder sb = new StringBuilder("{\"error\":");
+        FindingsExporter.appendJsonString(sb, message);
+        sendJson(exchange, status, sb.append('}').toString());
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /** Lets the parser close its reader without closing the surrounding ZIP stream. */
+    private static final class NonClosingInputStream extends FilterInputStream {
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the ZipInputStream moves on to the next entry instead
+        }
+    }
+}
@@ -8,6 +8,9 @@ module com.example.demo {
 
     requires java.prefs;
 
+    // service mode (--serve)
+    requires jdk.httpserver;
+
     opens com.example.demo to javafx.fxml;
     exports com.example.demo;
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Envelope checks of the parser: UNA separators, UNB/UNZ and UNH/UNT counts and references, and
+ * envelope problems kept out of the details text.
+ */
+class CbrFileParserTest {
+
+    private static final String UNB = "UNB+UNOC:3+SENDER+RECEIVER+200101:1200+REF1'";
+    private static final String MESSAGE = "UNH+1+IFTSTA:D:99B:UN'BGM+23+DOC1'NAD+ZZZ+ABC'";
+
+    @Test
+    void soundInterchangeHasNoEnvelopeErrors() throws IOException {
+        CbrFileParser.Result r = parse(UNB + MESSAGE + "UNT+4+1'UNZ+1+REF1'");
+
+        assertEquals("IFTSTA|DOC1/ZZZ=ABC", r.details);
+        assertEquals("", r.envelope);
+        assertEquals("UNH: 1 [IFTSTA] / NAD: 1", r.unhCount);
+    }
+
+    @Test
+    void unaServiceStringSetsSeparators() throws IOException {
+        CbrFileParser.Result r = parse("UNA:*.? ~"
+                + "UNB*UNOC:3*SENDER*RECEIVER*200101:1200*REF1~"
+                + "UNH*1*IFTSTA:D:99B:UN~BGM*23*DOC?*1~NAD*ZZZ*ABC~UNT*4*1~"
+                + "UNZ*1*REF1~");
+
+        assertEquals("IFTSTA|DOC*1/ZZZ=ABC", r.details);
+        assertEquals("", r.envelope);
+    }
+
+    @Test
+    void untCountAndReferenceMismatches() throws IOException {
+        CbrFileParser.Result r = parse(UNB + MESSAGE + "UNT+5+2'UNZ+1+REF1'");
+
+        assertEquals(List.of(
+                Finding.UNT_COUNT_MISMATCH + "|IFTSTA|DOC1|declared 5, actual 4",
+                Finding.UNT_REFERENCE_MISMATCH + "|IFTSTA|DOC1|UNH 1, UNT 2"), lines(r.envelope));
+    }
+
+    @Test
+    void unzCountAndReferenceMismatches() throws IOException {
+        CbrFileParser.Result r = parse(UNB + MESSAGE + "UNT+4+1'UNZ+2+REF9'");
+
+        assertEquals(List.of(
+                Finding.UNZ_COUNT_MISMATCH + "||REF1|declared 2, actual 1",
+                Finding.UNZ_REFERENCE_MISMATCH + "||REF1|UNB REF1, UNZ REF9"), lines(r.envelope));
+    }
+
+    @Test
+    void unzCountsFunctionalGroupsWhenPresent() throws IOException {
+        CbrFileParser.Result r = parse(UNB + "UNG+IFTSTA+S+R+200101:1200+G1'"
+                + MESSAGE + "UNT+4+1'" + MESSAGE + "UNT+4+1'"
+                + "UNE+2+G1'UNZ+1+REF1'");
+
+        assertEquals("", r.envelope);
+    }
+
+    @Test
+    void unzWithoutUnb() throws IOException {
+        CbrFileParser.Result r = parse(MESSAGE + "UNT+4+1'UNZ+1+REF1'");
+
+        assertEquals(List.of(Finding.UNZ_REFERENCE_MISMATCH + "||REF1|UNZ without UNB"), lines(r.envelope));
+    }
+
+    @Test
+    void unterminatedMessageAndInterchange() throws IOException {
+        CbrFileParser.Result r = parse(UNB + MESSAGE + MESSAGE);
+
+        assertEquals("IFTSTA|DOC1/ZZZ=ABC\nIFTSTA|DOC1/ZZZ=ABC", r.details);
+        assertEquals(List.of(
+                Finding.MESSAGE_NOT_TERMINATED + "|IFTSTA|DOC1|next UNH started before UNT",
+                Finding.MESSAGE_NOT_TERMINATED + "|IFTSTA|DOC1|end of file reached before UNT",
+                Finding.INTERCHANGE_NOT_TERMINATED + "||REF1|end of file reached before UNZ"), lines(r.envelope));
+    }
+
+    @Test
+    void envelopeErrorsStayOutOfDetailsButAreReported() throws IOException {
+        CbrFileParser.Result r = parse(UNB + MESSAGE + "UNT+5+1'UNZ+1+REF1'");
+        assertEquals("IFTSTA|DOC1/ZZZ=ABC", r.details);
+
+        CodeTable codes = new CodeTable(Set.of("ABC"), null);
+        List<Finding> findings = FindingsAnalyzer.collect(r.tid, r.filename, r.details, r.envelope, codes);
+        assertEquals(1, findings.size());
+        Finding f = findings.get(0);
+        assertEquals(Finding.UNT_COUNT_MISMATCH, f.getErrorType());
+        assertEquals("DOC1", f.getBgmReference());
+        assertEquals("declared 5, actual 4", f.getDetail());
+    }
+
+    private static CbrFileParser.Result parse(String content) throws IOException {
+        return CbrFileParser.parse("T1.txt", new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), null);
+    }
+
+    private static List<String> lines(String envelope) {
+        return envelope.isEmpty() ? List.of() : List.of(envelope.split("\n"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The suggester's bounded edit distance (bit-parallel up to 64 ASCII characters, banded beyond)
+ * against a plain dynamic-programming optimal string alignment, and its trigram candidate search
+ * against a scan of every code.
+ */
+class CodeSuggesterTest {
+
+    private static final String ALPHABET = "ABC12"; // small, so random strings share characters and swaps
+
+    @Test
+    void distanceOfEdgeCases() {
+        assertEquals(0, CodeSuggester.distance("", "", 2));
+        assertEquals(3, CodeSuggester.distance("", "ABC", 5));
+        assertEquals(3, CodeSuggester.distance("ABC", "", 2)); // capped at max + 1
+        assertEquals(1, CodeSuggester.distance("AB", "BA", 2));
+        assertEquals(2, CodeSuggester.distance("ABCD", "BADC", 3));
+        assertEquals(3, CodeSuggester.distance("CA", "ABC", 3)); // OSA, not unrestricted Damerau
+
+        String long70 = "X".repeat(30) + "AB" + "Y".repeat(38);
+        String swapped = "X".repeat(30) + "BA" + "Y".repeat(38);
+        assertEquals(1, CodeSuggester.distance(long70, swapped, 2));
+        assertEquals(1, CodeSuggester.distance("ÄB", "BÄ", 2)); // non-ASCII takes the banded path too
+    }
+
+    @Test
+    void distanceMatchesPlainOsa() {
+        Random random = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            int length = random.nextInt(4) == 0 ? 60 + random.nextInt(20) : random.nextInt(12); // both sides of 64
+            String plain = randomString(random, length);
+            String b = random.nextBoolean() ? randomString(random, Math.max(0, length + random.nextInt(5) - 2))
+                    : mutate(random, plain, 1 + random.nextInt(3));
+            String a = random.nextInt(50) == 0 ? plain + "Ä" : plain; // non-ASCII: banded path at any length
+
+            int expected = osa(a, b);
+            for (int max : new int[] { 0, 1, 2, 3, 100 }) {
+                assertEquals(Math.min(expected, max + 1), CodeSuggester.distance(a, b, max),
+                        () -> "distance(\"" + a + "\", \"" + b + "\", " + max + ")");
+            }
+        }
+    }
+
+    @Test
+    void typoCandidatesMatchFullScan() {
+        Random random = new Random(11);
+        Set<String> codes = new HashSet<>();
+        while (codes.size() < 3_000) codes.add(randomString(random, 5 + random.nextInt(8)));
+        List<String> codeList = new ArrayList<>(codes);
+        CodeSuggester suggester = new CodeSuggester(codes);
+
+        for (int i = 0; i < 500; i++) {
+            String query = mutate(random, codeList.get(random.nextInt(codeList.size())), 1 + random.nextInt(2));
+            if (codes.contains(query) || query.isEmpty()) continue;
+
+            Set<String> within1 = within(codes, query, 1);
+            Set<String> expected = !within1.isEmpty() || query.length() <= 4 ? within1 : within(codes, query, 2);
+
+            List<String> suggested = suggester.suggest(query, 10_000);
+            assertTrue(suggested.containsAll(expected), () -> query + ": expected " + expected + " in " + suggested);
+        }
+    }
+
+    @Test
+    void suggestionsRankFewestEditsFirst() {
+        CodeSuggester suggester = new CodeSuggester(Set.of("CUST0001", "CUST0010", "CUST0100", "OTHER01"));
+
+        assertEquals(List.of("CUST0001"), suggester.suggest("CUST0O01", 3)); // distance 2 is not tried
+        assertEquals(List.of("CUST0001", "CUST0010"), suggester.suggest("CUST001", 3)); // ties alphabetical
+        assertEquals(List.of(), suggester.suggest(""));
+    }
+
+    // ============================================================
+    // Reference implementation and inputs
+    // ============================================================
+
+    /** Textbook O(n * m) optimal string alignment distance. */
+    private static int osa(String a, String b) {
+        int n = a.length();
+        int m = b.length();
+        int[][] d = new int[n + 1][m + 1];
+        for (int i = 0; i <= n; i++) d[i][0] = i;
+        for (int j = 0; j <= m; j++) d[0][j] = j;
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                d[i][j] = Math.min(Math.min(d[i - 1][j] + 1, d[i][j - 1] + 1), d[i - 1][j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[n][m];
+    }
+
+    private static Set<String> within(Set<String> codes, String query, int max) {
+        Set<String> out = new HashSet<>();
+        for (String code : codes) {
+            if (osa(code, query) <= max) out.add(code);
+        }
+        return out;
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        return sb.toString();
+    }
+
+    /** Applies {@code edits} random inserts, deletes, substitutions or neighbour swaps. */
+    private static String mutate(Random random, String s, int edits) {
+        StringBuilder sb = new StringBuilder(s);
+        for (int e = 0; e < edits; e++) {
+            int op = sb.length() < 2 ? random.nextInt(2) : random.nextInt(4);
+            int at = random.nextInt(sb.length() + 1);
+            char c = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            switch (op) {
+                case 0 -> sb.insert(at, c);
+                case 1 -> { if (sb.length() > 0) sb.deleteCharAt(Math.min(at, sb.length() - 1)); }
+                case 2 -> sb.setCharAt(Math.min(at, sb.length() - 1), c);
+                default -> {
+                    int i = Math.min(at, sb.length() - 2);
+                    char t = sb.charAt(i);
+                    sb.setCharAt(i, sb.charAt(i + 1));
+                    sb.setCharAt(i + 1, t);
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
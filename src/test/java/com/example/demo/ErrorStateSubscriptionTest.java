@@ -0,0 +1,90 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Row highlighting must not accumulate listeners while rows are reused: after heavy scrolling an
+ * analysis pass (one {@code setHasErrors} per item) notifies only the rows that show those items.
+ */
+class ErrorStateSubscriptionTest {
+
+    private static final int ITEMS = 10_000;
+    private static final int ROWS = 40;
+    private static final int SCROLL_PASSES = 50;
+
+    @Test
+    void analysisNotifiesOnlyVisibleRowsAfterHeavyScrolling() {
+        List<HelloController.FileItem> items = items();
+        int[] notifications = new int[1];
+        List<HelloController.ErrorStateSubscription> rows = rows(notifications);
+
+        // scroll the whole table up and down, reusing the same rows for every item
+        for (int pass = 0; pass < SCROLL_PASSES; pass++) {
+            for (int top = 0; top + ROWS <= ITEMS; top += ROWS / 2) {
+                int first = (pass % 2 == 0) ? top : ITEMS - ROWS - top;
+                for (int r = 0; r < ROWS; r++) rows.get(r).observe(items.get(first + r));
+            }
+        }
+
+        int flatBaseline = analyze(items, notifications);
+        assertEquals(ROWS, flatBaseline, "only the rows currently showing an item react");
+
+        // a second analysis after more scrolling costs the same
+        for (int r = 0; r < ROWS; r++) rows.get(r).observe(items.get(ITEMS / 2 + r));
+        assertEquals(flatBaseline, analyze(items, notifications));
+    }
+
+    @Test
+    void reusedRowStopsFollowingItsPreviousItem() {
+        List<HelloController.FileItem> items = items();
+        List<Boolean> seen = new ArrayList<>();
+        HelloController.ErrorStateSubscription row = new HelloController.ErrorStateSubscription(seen::add);
+
+        row.observe(items.get(0));
+        row.observe(items.get(1));
+        assertSame(items.get(1), row.getObserved());
+
+        items.get(0).setHasErrors(true);
+        assertEquals(List.of(), seen);
+
+        items.get(1).setHasErrors(true);
+        assertEquals(List.of(true), seen);
+
+        row.observe(null);
+        assertNull(row.getObserved());
+        items.get(1).setHasErrors(false);
+        assertEquals(List.of(true), seen);
+    }
+
+    private static List<HelloController.FileItem> items() {
+        List<HelloController.FileItem> items = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            items.add(new HelloController.FileItem("TID" + i + ".txt", "TID" + i, "UNH: 1 / NAD: 1", ""));
+        }
+        return items;
+    }
+
+    private static List<HelloController.ErrorStateSubscription> rows(int[] notifications) {
+        List<HelloController.ErrorStateSubscription> rows = new ArrayList<>(ROWS);
+        for (int r = 0; r < ROWS; r++) {
+            rows.add(new HelloController.ErrorStateSubscription(isError -> notifications[0]++));
+        }
+        return rows;
+    }
+
+    /** Flips every item to "has errors" and back; returns the row notifications of the flip. */
+    private static int analyze(List<HelloController.FileItem> items, int[] notifications) {
+        notifications[0] = 0;
+        for (HelloController.FileItem item : items) item.setHasErrors(true);
+        int n = notifications[0];
+        for (HelloController.FileItem item : items) item.setHasErrors(false);
+        return n;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.demo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Run-to-run diff: the external sort / merge join fallback must give the same answer as the
+ * in-memory hash join, duplicate keys pair one to one, and a batch with unreadable sources is
+ * never compared.
+ */
+class FindingsDiffTest {
+
+    private static final int IN_MEMORY = 1_000_000;
+
+    @Test
+    void externalSortMatchesHashJoin() throws IOException {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            List<Finding> baseline = randomFindings(random, random.nextInt(300));
+            List<Finding> current = randomFindings(random, random.nextInt(300));
+
+            Map<FindingsDiff.Status, List<String>> hashed = new EnumMap<>(FindingsDiff.Status.class);
+            FindingsDiff.Summary inMemory = FindingsDiff.compare(run(baseline), run(current), collect(hashed), IN_MEMORY);
+
+            Map<FindingsDiff.Status, List<String>> merged = new EnumMap<>(FindingsDiff.Status.class);
+            int chunk = 1 + random.nextInt(16); // several sorted runs per side
+            FindingsDiff.Summary external = FindingsDiff.compare(run(baseline), run(current), collect(merged), chunk);
+
+            assertFalse(inMemory.externalSort);
+            assertEquals(baseline.size() > chunk, external.externalSort);
+            assertEquals(inMemory.newCount, external.newCount);
+            assertEquals(inMemory.fixedCount, external.fixedCount);
+            assertEquals(inMemory.unchangedCount, external.unchangedCount);
+            assertEquals(baseline.size(), external.baselineCount);
+            assertEquals(current.size(), external.currentCount);
+            assertEquals(sorted(hashed), sorted(merged));
+
+            assertEquals(current.size(), inMemory.newCount + inMemory.unchangedCount);
+            assertEquals(baseline.size(), inMemory.fixedCount + inMemory.unchangedCount);
+        }
+    }
+
+    @Test
+    void duplicateKeysPairOneToOne() throws IOException {
+        Finding missing = new Finding("T1", "T1.txt", "IFTSTA", "DOC1", "ZZZ", "XYZ", Finding.CODE_NOT_IN_TABLE);
+        List<Finding> three = List.of(missing, missing, missing);
+        List<Finding> two = List.of(missing, missing);
+
+        for (int maxInMemory : new int[] { IN_MEMORY, 1 }) {
+            FindingsDiff.Summary fixedOne = FindingsDiff.compare(run(three), run(two), (s, f) -> { }, maxInMemory);
+            assertEquals(2, fixedOne.unchangedCount);
+            assertEquals(1, fixedOne.fixedCount);
+            assertEquals(0, fixedOne.newCount);
+
+            FindingsDiff.Summary newOne = FindingsDiff.compare(run(two), run(three), (s, f) -> { }, maxInMemory);
+            assertEquals(2, newOne.unchangedCount);
+            assertEquals(0, newOne.fixedCount);
+            assertEquals(1, newOne.newCount);
+        }
+    }
+
+    @Test
+    void unreadableSourceAbortsBatchDiff(@TempDir Path dir) throws IOException {
+        Path txt = dir.resolve("T1.txt");
+        Files.writeString(txt, "UNB+UNOC:3+S+R+200101:1200+1'UNH+1+IFTSTA:D:99B:UN'BGM+23+DOC1'NAD+ZZZ+XYZ'"
+                + "UNT+4+1'UNZ+1+1'", StandardCharsets.UTF_8);
+        Path broken = dir.resolve("broken.zip");
+        Files.writeString(broken, "not a zip", StandardCharsets.UTF_8);
+
+        CodeTable codes = new CodeTable(Set.of("ABC"), null);
+        List<Finding> seen = new ArrayList<>();
+
+        FindingsDiff.Run batch = FindingsDiff.fromBatch(List.of(txt.toFile(), broken.toFile()), codes);
+        IOException e = assertThrows(IOException.class, () -> batch.forEach(seen::add));
+        assertTrue(e.getMessage().startsWith("Cannot read"), e.getMessage());
+        assertTrue(e.getMessage().contains("broken.zip"), e.getMessage());
+
+        // the readable file alone compares fine
+        FindingsDiff.Run readable = FindingsDiff.fromBatch(List.of(txt.toFile()), codes);
+        FindingsDiff.Summary summary = FindingsDiff.compare(readable, readable, (s, f) -> { }, IN_MEMORY);
+        assertEquals(1, summary.unchangedCount);
+        assertEquals(0, summary.newCount + summary.fixedCount);
+    }
+
+    /** Small key space, so both sides share keys and repeat them. */
+    private static List<Finding> randomFindings(Random random, int count) {
+        String[] types = { Finding.CODE_NOT_IN_TABLE, Finding.MISSING_REQUIRED_NAD, Finding.UNT_COUNT_MISMATCH };
+        List<Finding> findings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String tid = "T" + random.nextInt(8);
+            findings.add(new Finding(tid, tid + ".txt", "IFTSTA", "DOC" + random.nextInt(6), "ZZZ",
+                    "C" + random.nextInt(3), types[random.nextInt(types.length)]));
+        }
+        return findings;
+    }
+
+    private static FindingsDiff.Run run(List<Finding> findings) {
+        return consumer -> {
+            for (Finding f : findings) consumer.accept(f);
+        };
+    }
+
+    private static FindingsDiff.Sink collect(Map<FindingsDiff.Status, List<String>> into) {
+        return (status, f) -> into.computeIfAbsent(status, s -> new ArrayList<>()).add(FindingsDiff.key(f));
+    }
+
+    private static Map<FindingsDiff.Status, List<String>> sorted(Map<FindingsDiff.Status, List<String>> byStatus) {
+        for (List<String> keys : byStatus.values()) Collections.sort(keys);
+        return byStatus;
+    }
+}
@@ -0,0 +1,699 @@
+package com.example.demo;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * End-to-end performance regression run over a large synthetic corpus:
+ * generate ZIP → parse (same path as the upload) → duplicate-reference index → analyze → export (findings CSV.gz + Excel report),
+ * under whatever {@code -Xmx} the JVM was started with.
+ *
+ * Budgets are checked at the end; the run exits with status 1 when one is exceeded, and always writes
+ * a JSON report for trend tracking. It lives with the tests, outside the shipped app, and runs through
+ * {@code mvn -Pperf verify} (1 GB heap by default; options via {@code -Dperf.args}):
+ * <pre>
+ *   --tids 20000            TID files in the corpus
+ *   --corpus-mb 2048        approximate uncompressed corpus size
+ *   --seed 42               corpus generator seed
+ *   --corpus file.zip       reuse an existing corpus instead of generating one
+ *   --work-dir dir          where the corpus and exports are written (default: temp dir, deleted after)
+ *   --no-spill              keep message details on the heap instead of the spill file
+ *   --no-excel              skip the Excel report
+ *   --no-formats            skip the export format comparison
+ *   --suggester-codes 200000  code table size for the "did you mean" benchmark (0 skips it)
+ *   --max-wall-seconds 900  budget for parse + analyze + export
+ *   --max-heap-mb 900       budget for peak heap used
+ *   --max-gc-pause-ms 500   budget for the longest stop-the-world GC pause
+ *   --report file.json      report location (default: target/perf-report.json)
+ * </pre>
+ */
+public final class PerfSuite {
+
+    private PerfSuite() {
+    }
+
+    // Share of the generated codes that are in the table; the rest produce "code not in table"
+    private static final int KNOWN_CODES = 400;
+
+    // Misspelt and unknown codes looked up (uncached) by the suggester benchmark
+    private static final int SUGGESTER_QUERIES = 3_000;
+
+    public static void main(String[] args) throws Exception {
+        int tids = 20_000;
+        long corpusBytes = 2048L * 1024 * 1024;
+        long seed = 42;
+        Path corpus = null;
+        Path workDir = null;
+        boolean spill = true;
+        boolean excel = true;
+        boolean formats = true;
+        int suggesterCodes = 200_000;
+        double maxWallSeconds = 900;
+        long maxHeapMb = 900;
+        long maxGcPauseMs = 500;
+        Path report = Path.of("target", "perf-report.json");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--tids" -> tids = Integer.parseInt(args[++i]);
+                case "--corpus-mb" -> corpusBytes = Long.parseLong(args[++i]) * 1024 * 1024;
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--corpus" -> corpus = Path.of(args[++i]);
+                case "--work-dir" -> workDir = Path.of(args[++i]);
+                case "--no-spill" -> spill = false;
+                case "--no-excel" -> excel = false;
+                case "--no-formats" -> formats = false;
+                case "--suggester-codes" -> suggesterCodes = Integer.parseInt(args[++i]);
+                case "--max-wall-seconds" -> maxWallSeconds = Double.parseDouble(args[++i]);
+                case "--max-heap-mb" -> maxHeapMb = Long.parseLong(args[++i]);
+                case "--max-gc-pause-ms" -> maxGcPauseMs = Long.parseLong(args[++i]);
+                case "--report" -> report = Path.of(args[++i]);
+                default -> { /* ignore unknown options */ }
+            }
+        }
+
+        boolean tempWorkDir = workDir == null;
+        if (tempWorkDir) workDir = Files.createTempDirectory("msc-perf-");
+        Files.createDirectories(workDir);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", Instant.now().toString());
+        result.put("java_version", System.getProperty("java.version"));
+        result.put("max_heap_bytes", Runtime.getRuntime().maxMemory());
+        result.put("processors", Runtime.getRuntime().availableProcessors());
+        result.put("spill", spill);
+
+        int exitStatus = 0;
+        try {
+            // ---- corpus (not part of the budget)
+            long t0 = System.nanoTime();
+            CorpusStats corpusStats = null;
+            if (corpus == null) {
+                corpus = workDir.resolve("corpus.zip");
+                System.out.println("Generating corpus: " + tids + " TIDs, ~" + UiBatchPublisher.formatBytes(corpusBytes) + "...");
+                corpusStats = generateCorpus(corpus, tids, corpusBytes, seed);
+            }
+            result.put("generate_ms", millisSince(t0));
+            result.put("corpus_zip_bytes", Files.size(corpus));
+            if (corpusStats != null) {
+                result.put("corpus_files", corpusStats.files);
+                result.put("corpus_messages", corpusStats.messages);
+                result.put("corpus_uncompressed_bytes", corpusStats.bytes);
+            }
+
+            CodeTable codes = new CodeTable(knownCodes(), null);
+
+            System.gc();
+            GcMonitor gc = GcMonitor.install();
+            resetHeapPeaks();
+            long pipelineStart = System.nanoTime();
+            double wallSeconds;
+            long peakHeap;
+
+            // ---- parse (upload)
+            long t = System.nanoTime();
+            List<HelloController.FileItem> items = new ArrayList<>();
+            AtomicLong parsedBytes = new AtomicLong();
+            DetailSpillStore spillStore = spill ? new DetailSpillStore() : null;
+            try {
+                try (ZipFile zip = new ZipFile(corpus.toFile())) {
+                    Enumeration<? extends ZipEntry> e = zip.entries();
+                    while (e.hasMoreElements()) {
+                        ZipEntry entry = e.nextElement();
+                        if (entry.isDirectory() || !entry.getName().toLowerCase(Locale.ROOT).endsWith(".txt")) continue;
+                        try (InputStream in = zip.getInputStream(entry)) {
+                            CbrFileParser.Result r = CbrFileParser.parse(entry.getName(), in, null);
+                            HelloController.FileItem item = spillStore == null
+                                    ? new HelloController.FileItem(r.filename, r.tid, r.unhCount, r.details)
+                                    : new HelloController.FileItem(r.filename, r.tid, r.unhCount, spillStore.append(r.details));
+                            item.setEnvelope(r.envelope);
+                            items.add(item);
+                        }
+                        parsedBytes.addAndGet(Math.max(entry.getSize(), 0));
+                    }
+                }
+                result.put("parse_ms", millisSince(t));
+                result.put("parsed_files", items.size());
+                result.put("parsed_bytes", parsedBytes.get());
+
+                // ---- duplicate references (Bloom pre-pass when details are spilled, as in the UI)
+                t = System.nanoTime();
+                long messages = 0;
+                for (HelloController.FileItem item : items) messages += CbrFileParser.messageCount(item.getUnhCount());
+                DuplicateReferences duplicates = DuplicateReferences.build(
+                        DuplicateReferences.of(items, HelloController.FileItem::getTid, HelloController.FileItem::getDocumentID),
+                        spill, messages);
+                result.put("duplicate_index_ms", millisSince(t));
+                result.put("messages", messages);
+                result.put("duplicate_references", duplicates.size());
+
+                // ---- analyze
+                t = System.nanoTime();
+                int tidsWithErrors = 0;
+                long findings = 0;
+                for (HelloController.FileItem item : items) {
+                    List<Finding> f = FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, duplicates);
+                    if (!f.isEmpty()) {
+                        tidsWithErrors++;
+                        findings += f.size();
+                        FindingsAnalyzer.summarize(f);
+                    }
+                }
+                result.put("analyze_ms", millisSince(t));
+                result.put("tids_with_errors", tidsWithErrors);
+                result.put("findings", findings);
+
+                // ---- export
+                t = System.nanoTime();
+                Path csv = workDir.resolve("findings.csv.gz");
+                try (FindingsExporter exporter = FindingsExporter.open(csv, TidLinks::storyUrl)) {
+                    for (HelloController.FileItem item : items) {
+                        for (Finding f : FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, duplicates)) {
+                            exporter.write(f);
+                        }
+                    }
+                }
+                result.put("export_findings_ms", millisSince(t));
+                result.put("export_findings_bytes", Files.size(csv));
+
+                if (excel) {
+                    t = System.nanoTime();
+                    File xlsx = workDir.resolve("report.xlsx").toFile();
+                    ExcelSupport.exportReport(xlsx, items,
+                            item -> FindingsAnalyzer.summarize(
+                                    FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, duplicates)),
+                            TidLinks::storyUrl);
+                    result.put("export_excel_ms", millisSince(t));
+                    result.put("export_excel_bytes", xlsx.length());
+                }
+
+                // the budgets cover the pipeline above; the format comparison is reported, not budgeted
+                wallSeconds = (System.nanoTime() - pipelineStart) / 1_000_000_000.0;
+                gc.uninstall();
+                peakHeap = heapPeak();
+
+                if (formats) result.put("export_formats", compareExportFormats(workDir, items, codes, duplicates));
+                if (suggesterCodes > 0) result.put("code_suggester", benchmarkSuggester(suggesterCodes, seed));
+            } finally {
+                if (spillStore != null) {
+                    result.put("spill_bytes", spillStore.size());
+                    spillStore.close();
+                }
+            }
+
+
+            result.put("wall_seconds", Math.round(wallSeconds * 1000) / 1000.0);
+            result.put("peak_heap_bytes", peakHeap);
+            result.put("gc_count", gc.count.get());
+            result.put("gc_pause_total_ms", gc.totalPauseMs.get());
+            result.put("gc_pause_max_ms", gc.maxPauseMs.get());
+
+            // ---- budgets
+            List<String> violations = new ArrayList<>();
+            if (wallSeconds > maxWallSeconds) {
+                violations.add(String.format("wall clock %.1f s > %.1f s", wallSeconds, maxWallSeconds));
+            }
+            if (peakHeap > maxHeapMb * 1024 * 1024) {
+                violations.add("peak heap " + UiBatchPublisher.formatBytes(peakHeap) + " > " + maxHeapMb + " MB");
+            }
+            if (gc.maxPauseMs.get() > maxGcPauseMs) {
+                violations.add("max GC pause " + gc.maxPauseMs.get() + " ms > " + maxGcPauseMs + " ms");
+            }
+
+            Map<String, Object> budgets = new LinkedHashMap<>();
+            budgets.put("max_wall_seconds", maxWallSeconds);
+            budgets.put("max_heap_mb", maxHeapMb);
+            budgets.put("max_gc_pause_ms", maxGcPauseMs);
+            result.put("budgets", budgets);
+            result.put("violations", violations);
+            result.put("passed", violations.isEmpty());
+
+            writeReport(report, result);
+            printSummary(result, report);
+
+            if (!violations.isEmpty()) {
+                for (String v : violations) System.err.println("BUDGET EXCEEDED: " + v);
+                exitStatus = 1;
+            }
+
+        } finally {
+            if (tempWorkDir) deleteRecursively(workDir);
+        }
+        // only after the work dir is gone: System.exit would skip the finally block
+        if (exitStatus != 0) System.exit(exitStatus);
+    }
+
+    // ============================================================
+    // Synthetic corpus
+    // ============================================================
+
+    private static final class CorpusStats {
+        long files;
+        long messages;
+        long bytes;
+    }
+
+    private static List<String> knownCodes() {
+        List<String> codes = new ArrayList<>(KNOWN_CODES);
+        for (int i = 0; i < KNOWN_CODES; i++) codes.add(String.format("CUST%05d", i));
+        return codes;
+    }
+
+    /**
+     * Writes {@code tids} TXT files into a ZIP, each about {@code totalBytes / tids} bytes. The mix follows
+     * what real incident batches contain: UNA headers (some with a non-default terminator), segments
+     * wrapped at 80 columns, release-escaped references, IFTMBC/IFTSTA/APERAK messages, missing NADs,
+     * unknown codes, UNT count slips, references re-sent under another TID and duplicated TID files
+     * ("... - copy.txt").
+     */
+    static CorpusStats generateCorpus(Path target, int tids, long totalBytes, long seed) throws IOException {
+        Random rnd = new Random(seed);
+        CorpusStats stats = new CorpusStats();
+        long perFile = Math.max(2_000, totalBytes / Math.max(1, tids));
+        StringBuilder sb = new StringBuilder((int) Math.min(perFile + 4_096, 64L * 1024 * 1024));
+
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target), 1 << 16))) {
+            zip.setLevel(1); // generation time is not part of the budget, but keep it reasonable
+
+            for (int n = 0; n < tids; n++) {
+                sb.setLength(0);
+                stats.messages += generateFile(sb, rnd, n, perFile);
+
+                byte[] bytes = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+                String name = String.format("TID%08d.txt", 40_000_000 + n);
+                putEntry(zip, name, bytes);
+                stats.files++;
+                stats.bytes += bytes.length;
+
+                // ~1% duplicated TIDs, as when the same file is exported twice
+                if (rnd.nextInt(100) == 0) {
+                    putEntry(zip, name.replace(".txt", " - copy.txt"), bytes);
+                    stats.files++;
+                    stats.bytes += bytes.length;
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static void putEntry(ZipOutputStream zip, String name, byte[] bytes) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+
+    /** Appends one interchange of roughly {@code targetBytes}; returns the number of messages. */
+    private static int generateFile(StringBuilder out, Random rnd, int fileNo, long targetBytes) {
+        boolean una = rnd.nextInt(10) == 0;
+        char term = (una && rnd.nextBoolean()) ? '~' : '\'';
+        if (rnd.nextInt(4) != 0) return generateInterchange(out, rnd, fileNo, targetBytes, una, term, false);
+
+        StringBuilder unwrapped = new StringBuilder((int) Math.min(targetBytes + 4_096, 64L * 1024 * 1024));
+        int messages = generateInterchange(unwrapped, rnd, fileNo, targetBytes, una, term, true);
+        wrap(unwrapped, out);
+        return messages;
+    }
+
+    private static int generateInterchange(StringBuilder out, Random rnd, int fileNo, long targetBytes,
+                                           boolean una, char term, boolean wrapped) {
+
+        List<String> segs = new ArrayList<>(64);
+        if (una) out.append("UNA:+.? ").append(term);
+        segs.add("UNB+UNOC:3+MSCSENDER:ZZZ+RECEIVER:ZZZ+240101:1200+" + fileNo);
+
+        int messages = 0;
+        long approx = 0;
+        while (approx < targetBytes || messages == 0) {
+            messages++;
+            String type = switch (rnd.nextInt(10)) {
+                case 0, 1 -> "APERAK";
+                case 2, 3, 4 -> "IFTSTA";
+                default -> "IFTMBC";
+            };
+            int start = segs.size();
+            segs.add("UNH+" + messages + "+" + type + ":D:99B:UN");
+            // some references carry an escaped separator (e.g. "BKG?+123"); ~0.5% repeat one of the
+            // previous file's references, i.e. the same document re-sent under another TID
+            long refNo = (fileNo > 0 && rnd.nextInt(200) == 0) ? (fileNo - 1) * 1000L + messages : fileNo * 1000L + messages;
+            String ref = (rnd.nextInt(50) == 0 ? "BKG?+" : "BKG") + refNo;
+            segs.add("BGM+335+" + ref + "+9");
+            segs.add("DTM+137:20240101" + String.format("%04d", rnd.nextInt(2400)) + ":203");
+
+            int nadRoll = rnd.nextInt(100);
+            if (nadRoll >= 3) { // ~3% of messages have no NAD at all
+                String code = (nadRoll < 8)
+                        ? "UNKNOWN" + rnd.nextInt(5_000)                       // ~5% not in the table
+                        : String.format("CUST%05d", rnd.nextInt(KNOWN_CODES));
+                String qual = "APERAK".equals(type) && rnd.nextBoolean() ? (rnd.nextBoolean() ? "HI" : "TB") : "ZZZ";
+                segs.add("NAD+" + qual + "+MSC_" + code + "::160");
+            }
+            segs.add("NAD+CZ+SHIPPER" + rnd.nextInt(10_000) + "::160");
+
+            int filler = 6 + rnd.nextInt(20);
+            for (int i = 0; i < filler; i++) {
+                switch (i % 4) {
+                    case 0 -> segs.add("LOC+" + (9 + i) + "+DEHAM:139:6");
+                    case 1 -> segs.add("EQD+CN+MSCU" + (1_000_000 + rnd.nextInt(9_000_000)) + "+45G1:102:5");
+                    case 2 -> segs.add("FTX+AAI+++FREE TEXT LINE " + i + " FOR MESSAGE " + messages);
+                    default -> segs.add("RFF+BN:" + ref.replace("?+", "") + "-" + i);
+                }
+            }
+
+            int count = segs.size() - start + 1;
+            if (rnd.nextInt(200) == 0) count++; // ~0.5% UNT count slips
+            segs.add("UNT+" + count + "+" + messages);
+
+            for (int i = start; i < segs.size(); i++) approx += segs.get(i).length() + 2;
+            flush(out, segs, term, wrapped);
+        }
+        segs.add("UNZ+" + messages + "+" + fileNo);
+        flush(out, segs, term, wrapped);
+        return messages;
+    }
+
+    private static void flush(StringBuilder out, List<String> segs, char term, boolean wrapped) {
+        for (String s : segs) {
+            out.append(s).append(term);
+            if (!wrapped) out.append("\r\n");
+        }
+        segs.clear();
+    }
+
+    /** Fixed 80-column lines regardless of segment boundaries, as some mainframe exports do. */
+    private static void wrap(StringBuilder unwrapped, StringBuilder out) {
+        for (int i = 0; i < unwrapped.length(); i += 80) {
+            out.append(unwrapped, i, Math.min(i + 80, unwrapped.length())).append('\n');
+        }
+    }
+
+    // ============================================================
+    // Export format comparison
+    // ============================================================
+
+    /**
+     * Writes the same findings, one row per finding, as CSV and JSON Lines (plain and gzip) and as
+     * a per-finding XLSX (the sharded export, one sheet plus its index). Findings are collected
+     * once up front, so each format is timed on writing alone; rows/s and bytes on disk are
+     * therefore comparable across formats.
+     */
+    private static Map<String, Object> compareExportFormats(Path dir, List<HelloController.FileItem> items,
+                                                            CodeTable codes, DuplicateReferences duplicates) throws IOException {
+        Map<HelloController.FileItem, List<Finding>> findings = new HashMap<>(items.size() * 2);
+        long rows = 0;
+        for (HelloController.FileItem item : items) {
+            List<Finding> f = FindingsAnalyzer.collect(item.getTid(), item.getFilename(), item.getDocumentID(), item.getEnvelope(), codes, duplicates);
+            findings.put(item, f);
+            rows += f.size();
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        for (String ext : List.of("csv", "csv.gz", "jsonl", "jsonl.gz")) {
+            Path file = dir.resolve("formats." + ext);
+            long t = System.nanoTime();
+            try (FindingsExporter exporter = FindingsExporter.open(file, TidLinks::storyUrl)) {
+                for (HelloController.FileItem item : items) {
+                    for (Finding f : findings.get(item)) exporter.write(f);
+                }
+            }
+            out.put(ext, formatStats(rows, Files.size(file), System.nanoTime() - t));
+        }
+
+        File xlsx = dir.resolve("formats.xlsx").toFile();
+        long t = System.nanoTime();
+        ShardedExport.Result r = new ShardedExport(items, findings::get, TidLinks::storyUrl,
+                ShardedExport.Split.SIZE, ShardedExport.Layout.SHEETS,
+                ShardedExport.DEFAULT_ROWS_PER_SHARD, ShardedExport.DEFAULT_TIDS_PER_SHARD, 1)
+                .export(xlsx);
+        out.put("xlsx", formatStats(r.rows, xlsx.length(), System.nanoTime() - t));
+        return out;
+    }
+
+    private static Map<String, Object> formatStats(long rows, long bytes, long nanos) {
+        long ms = Math.max(1, nanos / 1_000_000);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("rows", rows);
+        m.put("bytes", bytes);
+        m.put("ms", ms);
+        m.put("rows_per_sec", rows * 1000 / ms);
+        return m;
+    }
+
+    // ============================================================
+    // Code suggestions
+    // ============================================================
+
+    /**
+     * Times the "did you mean" index on a large code table: building it, then uncached lookups of
+     * codes one or two edits away from a valid one and of codes unlike any, against a scan that
+     * computes the same bounded distance to every code. Reported, not budgeted.
+     */
+    private static Map<String, Object> benchmarkSuggester(int codeCount, long seed) {
+        Random rnd = new Random(seed);
+        Set<String> codes = new HashSet<>(codeCount * 2);
+        while (codes.size() < codeCount) codes.add(randomCode(rnd));
+        List<String> codeList = new ArrayList<>(codes);
+
+        List<String> queries = new ArrayList<>(SUGGESTER_QUERIES);
+        for (int i = 0; i < SUGGESTER_QUERIES; i++) {
+            String code = codeList.get(rnd.nextInt(codeList.size()));
+            queries.add(switch (i % 3) {
+                case 0 -> typo(rnd, code);
+                case 1 -> typo(rnd, typo(rnd, code));
+                default -> randomCode(rnd);
+            });
+        }
+
+        long t = System.nanoTime();
+        CodeSuggester suggester = new CodeSuggester(codes);
+        long buildMs = millisSince(t);
+
+        for (int i = 0; i < 300; i++) suggester.suggest(queries.get(i), CodeSuggester.DEFAULT_LIMIT); // warm-up
+        t = System.nanoTime();
+        long answered = 0;
+        for (String q : queries) {
+            if (!suggester.suggest(q, CodeSuggester.DEFAULT_LIMIT).isEmpty()) answered++;
+        }
+        long lookupNanos = Math.max(1, System.nanoTime() - t);
+
+        // the scan is slow; a sample is enough for its rate
+        int scanned = Math.min(queries.size(), 100);
+        t = System.nanoTime();
+        long scanMatches = 0;
+        for (int i = 0; i < scanned; i++) {
+            for (String code : codeList) {
+                if (CodeSuggester.distance(queries.get(i), code, 2) <= 2) scanMatches++;
+            }
+        }
+        long scanNanos = Math.max(1, System.nanoTime() - t);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("codes", codeCount);
+        m.put("build_ms", buildMs);
+        m.put("lookups", (long) queries.size());
+        m.put("lookups_per_sec", queries.size() * 1_000_000_000L / lookupNanos);
+        m.put("with_suggestions", answered);
+        m.put("scan_lookups_per_sec", scanned * 1_000_000_000L / scanNanos);
+        m.put("scan_sample", (long) scanned);
+        m.put("scan_sample_matches", scanMatches);
+        return m;
+    }
+
+    private static String randomCode(Random rnd) {
+        String[] prefixes = { "CUST", "DEHAM", "NLRTM", "CN" };
+        StringBuilder sb = new StringBuilder(prefixes[rnd.nextInt(prefixes.length)]);
+        int n = 4 + rnd.nextInt(4);
+        for (int i = 0; i < n; i++) sb.append("ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".charAt(rnd.nextInt(36)));
+        return sb.toString();
+    }
+
+    /** One random insert, delete, substitution or swap of neighbours, as when a code is typed. */
+    private static String typo(Random rnd, String code) {
+        StringBuilder sb = new StringBuilder(code);
+        int at = rnd.nextInt(sb.length() - 1);
+        char c = (char) ('A' + rnd.nextInt(26));
+        switch (rnd.nextInt(4)) {
+            case 0 -> sb.insert(at, c);
+            case 1 -> sb.deleteCharAt(at);
+            case 2 -> sb.setCharAt(at, c);
+            default -> {
+                char t = sb.charAt(at);
+                sb.setCharAt(at, sb.charAt(at + 1));
+                sb.setCharAt(at + 1, t);
+            }
+        }
+        return sb.toString();
+    }
+
+    // ============================================================
+    // Heap + GC measurement
+    // ============================================================
+
+    private static void resetHeapPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    /** Sum of per-pool peaks: an upper bound of the peak heap actually in use at one time. */
+    private static long heapPeak() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) sum += pool.getPeakUsage().getUsed();
+        }
+        return sum;
+    }
+
+    /** Collects GC pause durations from the platform GC notifications. */
+    private static final class GcMonitor {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalPauseMs = new AtomicLong();
+        final AtomicLong maxPauseMs = new AtomicLong();
+        private final List<NotificationEmitter> emitters = new ArrayList<>();
+        private final NotificationListener listener = (notification, handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // ZGC / Shenandoah "Cycles" beans report concurrent work, not pauses
+            if (info.getGcName().endsWith("Cycles")) return;
+            long ms = info.getGcInfo().getDuration();
+            count.incrementAndGet();
+            totalPauseMs.addAndGet(ms);
+            maxPauseMs.accumulateAndGet(ms, Math::max);
+        };
+
+        static GcMonitor install() {
+            GcMonitor m = new GcMonitor();
+            for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (bean instanceof NotificationEmitter emitter) {
+                    emitter.addNotificationListener(m.listener, null, null);
+                    m.emitters.add(emitter);
+                }
+            }
+            return m;
+        }
+
+        void uninstall() {
+            for (NotificationEmitter emitter : emitters) {
+                try {
+                    emitter.removeNotificationListener(listener);
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    // ============================================================
+    // Report
+    // ============================================================
+
+    private static void writeReport(Path report, Map<String, Object> result) throws IOException {
+        Path parent = report.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        StringBuilder sb = new StringBuilder(1024);
+        appendJson(sb, result);
+        sb.append('\n');
+        try (OutputStream out = Files.newOutputStream(report)) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static void appendJson(StringBuilder sb, Object value) {
+        if (value instanceof Map<?, ?> map) {
+            sb.append('{');
+            boolean first = true;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                if (!first) sb.append(',');
+                first = false;
+                FindingsExporter.appendJsonString(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                appendJson(sb, e.getValue());
+            }
+            sb.append('}');
+        } else if (value instanceof List<?> list) {
+            sb.append('[');
+            for (int i = 0; i < list.size(); i++) {
+                if (i > 0) sb.append(',');
+                appendJson(sb, list.get(i));
+            }
+            sb.append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            sb.append(value);
+        } else {
+            FindingsExporter.appendJsonString(sb, String.valueOf(value));
+        }
+    }
+
+    private static void printSummary(Map<String, Object> r, Path report) {
+        System.out.println("Parsed " + r.get("parsed_files") + " files (" + UiBatchPublisher.formatBytes((Long) r.get("parsed_bytes"))
+                + ") in " + r.get("parse_ms") + " ms");
+        System.out.println("Analyzed in " + r.get("analyze_ms") + " ms: " + r.get("tids_with_errors") + " TIDs with errors, "
+                + r.get("findings") + " findings");
+        System.out.println("Exported findings in " + r.get("export_findings_ms") + " ms"
+                + (r.containsKey("export_excel_ms") ? ", Excel report in " + r.get("export_excel_ms") + " ms" : ""));
+        if (r.get("export_formats") instanceof Map<?, ?> formats) {
+            for (Map.Entry<?, ?> e : formats.entrySet()) {
+                Map<?, ?> f = (Map<?, ?>) e.getValue();
+                System.out.println(String.format(Locale.ROOT, "  %-8s %,d rows in %d ms (%,d rows/s), %s",
+                        e.getKey(), (Long) f.get("rows"), (Long) f.get("ms"), (Long) f.get("rows_per_sec"),
+                        UiBatchPublisher.formatBytes((Long) f.get("bytes"))));
+            }
+        }
+        if (r.get("code_suggester") instanceof Map<?, ?> s) {
+            System.out.println(String.format(Locale.ROOT,
+                    "Suggestions over %,d codes: index built in %d ms, %,d lookups/s (%,d of %,d answered), full scan %,d lookups/s",
+                    (Integer) s.get("codes"), (Long) s.get("build_ms"), (Long) s.get("lookups_per_sec"),
+                    (Long) s.get("with_suggestions"), (Long) s.get("lookups"), (Long) s.get("scan_lookups_per_sec")));
+        }
+        System.out.println("Wall clock " + r.get("wall_seconds") + " s • peak heap "
+                + UiBatchPublisher.formatBytes((Long) r.get("peak_heap_bytes")) + " of "
+                + UiBatchPublisher.formatBytes((Long) r.get("max_heap_bytes")) + " • GC " + r.get("gc_count")
+                + " pauses, max " + r.get("gc_pause_max_ms") + " ms, total " + r.get("gc_pause_total_ms") + " ms");
+        System.out.println("Report: " + report.toAbsolutePath() + (Boolean.TRUE.equals(r.get("passed")) ? " (PASSED)" : " (FAILED)"));
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static void deleteRecursively(Path dir) {
+        try (var paths = Files.walk(dir)) {
+            paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException ignored) {
+                }
+            });
+        } catch (IOException ignored) {
+        }
+    }
+}
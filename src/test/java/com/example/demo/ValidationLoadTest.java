@@ -0,0 +1,193 @@
+package com.example.demo;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load-test harness for {@link ValidationService}: fires {@code POST /validate} requests from a
+ * fixed number of concurrent clients and reports requests/sec and latency percentiles.
+ *
+ * Run with {@code mvnw.cmd -Pload-test verify -Dload.args="(options)"}; options:
+ * {@code [--url http://127.0.0.1:8085] [--file upload.txt|.zip] [--codes codes.csv]
+ * [--requests 2000] [--concurrency 32] [--warmup 200]}
+ *
+ * Without {@code --url} an in-process service is started on a free port. Without {@code --file}
+ * a synthetic CBR file is generated (and, for the in-process service, a matching code table).
+ * This is a test-scope class, so the shipped app does not need {@code java.net.http}.
+ */
+public final class ValidationLoadTest {
+
+    private ValidationLoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = null;
+        Path file = null;
+        Path codesFile = null;
+        int requests = 2000;
+        int concurrency = 32;
+        int warmup = 200;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--url" -> url = optionValue(args, ++i);
+                    case "--file" -> file = Path.of(optionValue(args, ++i));
+                    case "--codes" -> codesFile = Path.of(optionValue(args, ++i));
+                    case "--requests" -> requests = Integer.parseInt(optionValue(args, ++i));
+                    case "--concurrency" -> concurrency = Integer.parseInt(optionValue(args, ++i));
+                    case "--warmup" -> warmup = Integer.parseInt(optionValue(args, ++i));
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            exitWithUsage("--requests, --concurrency and --warmup need whole numbers");
+        } catch (IllegalArgumentException e) {
+            exitWithUsage(e.getMessage());
+        }
+        if (requests < 1 || concurrency < 1 || warmup < 0) {
+            exitWithUsage("--requests and --concurrency must be positive, --warmup must not be negative");
+        }
+
+        byte[] body = (file != null) ? Files.readAllBytes(file) : syntheticFile(200);
+        String name = (file != null) ? file.getFileName().toString() : "LOADTEST.txt";
+
+        ValidationService embedded = null;
+        if (url == null) {
+            embedded = new ValidationService(0);
+            embedded.setCodes(new CodeTable(List.of("CUST001", "CUST002", "CUST003"), null));
+            embedded.start();
+            url = "http://127.0.0.1:" + embedded.getPort();
+        }
+
+        try (HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build()) {
+
+            if (codesFile != null) {
+                HttpResponse<String> r = client.send(HttpRequest.newBuilder(URI.create(url + "/codes"))
+                        .POST(HttpRequest.BodyPublishers.ofFile(codesFile)).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                System.out.println("Codes: " + r.statusCode() + " " + r.body());
+            }
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/validate?name=" + URLEncoder.encode(name, StandardCharsets.UTF_8)))
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+
+            System.out.println("Target: " + url + " • body " + UiBatchPublisher.formatBytes(body.length)
+                    + " • " + concurrency + " clients");
+
+            if (warmup > 0) run(client, request, warmup, concurrency);
+
+            long started = System.nanoTime();
+            Stats stats = run(client, request, requests, concurrency);
+            long elapsedNanos = System.nanoTime() - started;
+
+            stats.print(elapsedNanos);
+        } finally {
+            if (embedded != null) embedded.stop();
+        }
+    }
+
+    private static String optionValue(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private static void exitWithUsage(String problem) {
+        if (problem != null) System.err.println(problem);
+        System.err.println("Usage: [--url http://127.0.0.1:8085] [--file upload.txt|.zip] [--codes codes.csv]"
+                + " [--requests 2000] [--concurrency 32] [--warmup 200]");
+        System.exit(2);
+    }
+
+    // ============================================================
+    // Run
+    // ============================================================
+
+    private static Stats run(HttpClient client, HttpRequest request, int requests, int concurrency) throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<?>[] futures = new Future<?>[concurrency];
+            for (int w = 0; w < concurrency; w++) {
+                futures[w] = workers.submit(() -> {
+                    int i;
+                    while ((i = next.getAndIncrement()) < requests) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<Void> r = client.send(request, HttpResponse.BodyHandlers.discarding());
+                            if (r.statusCode() != 200) errors.incrementAndGet();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                        }
+                        latencies[i] = System.nanoTime() - t0;
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> f : futures) f.get();
+        }
+
+        return new Stats(latencies, errors.get());
+    }
+
+    private static final class Stats {
+        final long[] latencies;
+        final int errors;
+
+        Stats(long[] latencies, int errors) {
+            this.latencies = latencies;
+            this.errors = errors;
+            Arrays.sort(latencies);
+        }
+
+        double percentileMillis(double p) {
+            if (latencies.length == 0) return 0;
+            int idx = (int) Math.ceil(p * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(idx, latencies.length - 1))] / 1_000_000.0;
+        }
+
+        void print(long elapsedNanos) {
+            double seconds = elapsedNanos / 1_000_000_000.0;
+            System.out.printf("Requests: %d • errors: %d • elapsed: %.2f s%n", latencies.length, errors, seconds);
+            System.out.printf("Throughput: %.1f req/s%n", latencies.length / seconds);
+            System.out.printf("Latency ms: p50 %.2f • p90 %.2f • p99 %.2f • max %.2f%n",
+                    percentileMillis(0.50), percentileMillis(0.90), percentileMillis(0.99), percentileMillis(1.0));
+        }
+    }
+
+    // ============================================================
+    // Synthetic input
+    // ============================================================
+
+    /** One interchange with {@code messages} IFTMBC messages; every fifth uses an unknown code. */
+    static byte[] syntheticFile(int messages) {
+        StringBuilder sb = new StringBuilder(messages * 160);
+        sb.append("UNB+UNOC:3+SENDER+MSC+240101:1200+1'\n");
+        for (int m = 1; m <= messages; m++) {
+            String code = (m % 5 == 0) ? "UNKNOWN" + m : "CUST00" + (1 + m % 3);
+            sb.append("UNH+").append(m).append("+IFTMBC:D:99B:UN'\n");
+            sb.append("BGM+335+BKG").append(m).append("+9'\n");
+            sb.append("NAD+ZZZ+").append(code).append("'\n");
+            sb.append("UNT+4+").append(m).append("'\n");
+        }
+        sb.append("UNZ+").append(messages).append("+1'\n");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}